@@ -8,6 +8,7 @@ import fr.umlv.smalljs.rt.JSObject;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Supplier;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.ParserRuleContext;
@@ -18,6 +19,9 @@ import org.antlr.v4.runtime.tree.RuleNode;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
+  // the number of loops around the current statement in the current function,
+  // a break or a continue is only allowed inside a loop
+  private int loopDepth;
 
   private ASTBuilder() {}
 
@@ -83,13 +87,17 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
 
   @Override
   public Expr visitVariableStatement(ECMAScriptParser.VariableStatementContext ctx) {
-    var vars = ctx.variableDeclarationList().variableDeclaration().stream()
+    return variableDeclarations(ctx.variableDeclarationList(), lineNumber(ctx));
+  }
+
+  private Expr variableDeclarations(ECMAScriptParser.VariableDeclarationListContext ctx, int lineNumber) {
+    var vars = ctx.variableDeclaration().stream()
         .<Expr>map(v -> new Expr.VarAssignment(v.Identifier().getText(), v.initialiser().accept(this), true, lineNumber(v)))
         .toList();
     if (vars.size() == 1) {
       return vars.getFirst();
     }
-    return new Expr.Block(vars, lineNumber(ctx));
+    return new Expr.Block(vars, lineNumber);
   }
   @Override
   public Expr visitVariableDeclarationList(ECMAScriptParser.VariableDeclarationListContext ctx) {
@@ -131,23 +139,82 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
     return new Expr.If(condition, trueBlock, falseBlock, lineNumber(ctx));
   }
 
+  private Expr.Block loopBody(ECMAScriptParser.StatementContext ctx) {
+    loopDepth++;
+    try {
+      var body = ctx.accept(this);
+      return body == null ? new Expr.Block(List.of(), lineNumber(ctx)) : asBlock(body);  // empty statement
+    } finally {
+      loopDepth--;
+    }
+  }
+
+  // a missing expression of a for, the condition is always true
+  private Expr optional(ECMAScriptParser.ExpressionSequenceContext ctx, int lineNumber) {
+    return ctx == null ? new Expr.Literal(1, lineNumber) : ctx.accept(this);
+  }
+
+  private Expr.Block optionalBlock(ECMAScriptParser.ExpressionSequenceContext ctx, int lineNumber) {
+    return ctx == null ? new Expr.Block(List.of(), lineNumber) : asBlock(ctx.accept(this));
+  }
+
   @Override
   public Expr visitDoStatement(ECMAScriptParser.DoStatementContext ctx) {
-    throw unsupported("do ... while", ctx);
+    var body = loopBody(ctx.statement());
+    var condition = ctx.expressionSequence().accept(this);
+    return new Expr.Loop(condition, body, new Expr.Block(List.of(), lineNumber(ctx)), false, lineNumber(ctx));
   }
 
   @Override
   public Expr visitWhileStatement(ECMAScriptParser.WhileStatementContext ctx) {
-    throw unsupported("while", ctx);
+    var condition = ctx.expressionSequence().accept(this);
+    var body = loopBody(ctx.statement());
+    return new Expr.Loop(condition, body, new Expr.Block(List.of(), lineNumber(ctx)), true, lineNumber(ctx));
+  }
+
+  // for (init; condition; update) body, the init is executed before the loop
+  private Expr forLoop(Expr init, ECMAScriptParser.ExpressionSequenceContext condition,
+                       ECMAScriptParser.ExpressionSequenceContext update, ECMAScriptParser.StatementContext body,
+                       int lineNumber) {
+    var loop = new Expr.Loop(optional(condition, lineNumber), loopBody(body), optionalBlock(update, lineNumber),
+        true, lineNumber);
+    if (init == null) {
+      return loop;
+    }
+    return new Expr.Block(List.of(init, loop), lineNumber);
   }
 
   @Override
   public Expr visitForStatement(ECMAScriptParser.ForStatementContext ctx) {
-    throw unsupported("for", ctx);
+    // the expressions are optional, find them using the position of the semicolons
+    var semicolon1 = ctx.SemiColon(0).getSymbol().getTokenIndex();
+    var semicolon2 = ctx.SemiColon(1).getSymbol().getTokenIndex();
+    ECMAScriptParser.ExpressionSequenceContext init = null, condition = null, update = null;
+    for (var expressionSequence : ctx.expressionSequence()) {
+      var index = expressionSequence.getStart().getTokenIndex();
+      if (index < semicolon1) {
+        init = expressionSequence;
+      } else if (index < semicolon2) {
+        condition = expressionSequence;
+      } else {
+        update = expressionSequence;
+      }
+    }
+    return forLoop(init == null ? null : init.accept(this), condition, update, ctx.statement(), lineNumber(ctx));
   }
   @Override
   public Expr visitForVarStatement(ECMAScriptParser.ForVarStatementContext ctx) {
-    throw unsupported("for", ctx);
+    var semicolon2 = ctx.SemiColon(1).getSymbol().getTokenIndex();
+    ECMAScriptParser.ExpressionSequenceContext condition = null, update = null;
+    for (var expressionSequence : ctx.expressionSequence()) {
+      if (expressionSequence.getStart().getTokenIndex() < semicolon2) {
+        condition = expressionSequence;
+      } else {
+        update = expressionSequence;
+      }
+    }
+    var init = variableDeclarations(ctx.variableDeclarationList(), lineNumber(ctx));
+    return forLoop(init, condition, update, ctx.statement(), lineNumber(ctx));
   }
   @Override
   public Expr visitForInStatement(ECMAScriptParser.ForInStatementContext ctx) {
@@ -160,12 +227,24 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
 
   @Override
   public Expr visitContinueStatement(ECMAScriptParser.ContinueStatementContext ctx) {
-    throw unsupported("continue", ctx);
+    if (ctx.Identifier() != null) {
+      throw unsupported("continue with a label", ctx);
+    }
+    if (loopDepth == 0) {
+      throw unsupported("continue outside a loop", ctx);
+    }
+    return new Expr.Continue(lineNumber(ctx));
   }
 
   @Override
   public Expr visitBreakStatement(ECMAScriptParser.BreakStatementContext ctx) {
-    throw unsupported("break", ctx);
+    if (ctx.Identifier() != null) {
+      throw unsupported("break with a label", ctx);
+    }
+    if (loopDepth == 0) {
+      throw unsupported("break outside a loop", ctx);
+    }
+    return new Expr.Break(lineNumber(ctx));
   }
 
   @Override
@@ -246,9 +325,20 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
       throw unsupported("unnamed function statement", ctx);
     }
     var parameters = formalParameterList(ctx.formalParameterList());
-    var body = (Expr.Block) ctx.functionBody().accept(this);
+    var body = functionBody(() -> ctx.functionBody().accept(this));
     return new Expr.Fun(name, parameters, true, body, lineNumber(ctx));
   }
+  // the body of a function is not inside the loops around the function
+  private Expr.Block functionBody(Supplier<Expr> body) {
+    var enclosingLoopDepth = loopDepth;
+    loopDepth = 0;
+    try {
+      return (Expr.Block) body.get();
+    } finally {
+      loopDepth = enclosingLoopDepth;
+    }
+  }
+
   @Override
   public Expr visitFormalParameterList(ECMAScriptParser.FormalParameterListContext ctx) {
     throw new AssertionError();
@@ -406,7 +496,7 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
   public Expr visitFunctionExpression(ECMAScriptParser.FunctionExpressionContext ctx) {
     var name = ctx.Identifier() instanceof TerminalNode id ? id.getText() : "anonymous";
     var parameters = formalParameterList(ctx.formalParameterList());
-    var body = (Expr.Block) ctx.functionBody().sourceElements().accept(this);
+    var body = functionBody(() -> ctx.functionBody().sourceElements().accept(this));
     return new Expr.Fun(name, parameters, false, body, lineNumber(ctx));
   }
 
@@ -57,6 +57,22 @@ public sealed interface Expr {
     }
   }
 
+  // a while, a for or a do ... while, the condition is tested before each iteration (testFirst)
+  // or after each iteration, the update is executed at the end of each iteration, even after a continue
+  record Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) implements Expr, Statement {
+    public Loop {
+      requireNonNull(condition);
+      requireNonNull(body);
+      requireNonNull(update);
+    }
+  }
+
+  // exits the innermost loop
+  record Break(int lineNumber) implements Expr, Statement {}
+
+  // jumps to the update of the innermost loop
+  record Continue(int lineNumber) implements Expr, Statement {}
+
   record Literal(Object value, int lineNumber) implements Expr {
     public Literal {
       requireNonNull(value);
@@ -99,5 +115,10 @@ public sealed interface Expr {
     public Return {
       requireNonNull(expr);
     }
+
+    // a return of a call is a tail call, the frame of the function is not needed during the call
+    public boolean tailCall() {
+      return expr instanceof Call;
+    }
   }
 }
@@ -0,0 +1,330 @@
+package fr.umlv.smalljs.ast;
+
+import static java.util.stream.Collectors.toMap;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// replaces a call to a small function by the expression returned by the function.
+// A function can be inlined if
+// - it is declared by the top level code and its body is only a return of an expression
+//   that does not declare a function, does not assign a variable and does not use this,
+// - its name is defined only once (so it is never redefined) and is never the name of a local variable,
+// - it does not call itself and the returned expression is small,
+// - the variables of the expression that are not parameters are not the name of a local variable,
+//   so they are still global variables where the function is inlined.
+// Only the calls that follow the declaration of the function are inlined, and only if the arguments
+// can replace the parameters without changing the semantics: a literal, a variable used at least once
+// or an expression without side effect used once, not evaluated after a side effect of the function.
+// Reading a variable or evaluating an expression may fail (an undefined variable), so it is never dropped.
+final class Inliner {
+  private static final int MAX_INLINE_SIZE = 16;
+  private static final Set<String> OPERATORS = Set.of("+", "-", "*", "/", "%", "==", "!=", "<", "<=", ">", ">=");
+
+  // a function that can be inlined, the number of times each parameter is used and the parameters
+  // that are used after a side effect
+  private record Candidate(List<String> parameters, Expr expr, Map<String, Integer> useMap,
+                           Set<String> usedAfterEffectSet) {}
+
+  private final Map<String, Integer> definitionMap;
+  private final Set<String> localNames;
+  private final HashMap<String, Candidate> candidateMap = new HashMap<>();
+
+  private Inliner(Map<String, Integer> definitionMap, Set<String> localNames) {
+    this.definitionMap = definitionMap;
+    this.localNames = localNames;
+  }
+
+  static Block inline(Block body) {
+    var definitionMap = new HashMap<String, Integer>();
+    var localNames = new HashSet<String>();
+    collectNames(body, false, definitionMap, localNames);
+    var inliner = new Inliner(definitionMap, localNames);
+    // the functions are declared in order, so a function is inlined by the code that follows its declaration
+    var exprs = body.exprs().stream()
+        .map(expr -> {
+          var newExpr = inliner.visit(expr);
+          if (newExpr instanceof Fun fun && fun.toplevel()) {
+            inliner.declare(fun);
+          }
+          return newExpr;
+        })
+        .toList();
+    return new Block(exprs, body.lineNumber());
+  }
+
+  // counts the definitions of each name and collects the names of the parameters and local variables
+  private static void collectNames(Expr expression, boolean inFunction, Map<String, Integer> definitionMap,
+                                   Set<String> localNames) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          collectNames(expr, inFunction, definitionMap, localNames);
+        }
+      }
+      case Literal _, Identifier _ -> {}
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        collectNames(qualifier, inFunction, definitionMap, localNames);
+        for (var arg : args) {
+          collectNames(arg, inFunction, definitionMap, localNames);
+        }
+      }
+      case VarAssignment(String name, Expr expr, boolean declaration, _) -> {
+        definitionMap.merge(name, 1, Integer::sum);
+        if (inFunction && declaration) {
+          localNames.add(name);
+        }
+        collectNames(expr, inFunction, definitionMap, localNames);
+      }
+      case Fun(String name, List<String> parameters, boolean toplevel, Block body, _) -> {
+        if (toplevel) {
+          definitionMap.merge(name, 1, Integer::sum);
+          if (inFunction) {
+            localNames.add(name);
+          }
+        }
+        for (var parameter : parameters) {
+          definitionMap.merge(parameter, 1, Integer::sum);
+        }
+        localNames.addAll(parameters);
+        collectNames(body, true, definitionMap, localNames);
+      }
+      case Return(Expr expr, _) -> collectNames(expr, inFunction, definitionMap, localNames);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        collectNames(condition, inFunction, definitionMap, localNames);
+        collectNames(trueBlock, inFunction, definitionMap, localNames);
+        collectNames(falseBlock, inFunction, definitionMap, localNames);
+      }
+      case Loop(Expr condition, Block body, Block update, _, _) -> {
+        collectNames(condition, inFunction, definitionMap, localNames);
+        collectNames(body, inFunction, definitionMap, localNames);
+        collectNames(update, inFunction, definitionMap, localNames);
+      }
+      case Break _, Continue _ -> {}
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        for (var expr : initMap.values()) {
+          collectNames(expr, inFunction, definitionMap, localNames);
+        }
+      }
+      case FieldAccess(Expr receiver, _, _) -> collectNames(receiver, inFunction, definitionMap, localNames);
+      case FieldAssignment(Expr receiver, String name, Expr expr, _) -> {
+        // a field of globalThis is a global variable
+        definitionMap.merge(name, 1, Integer::sum);
+        collectNames(receiver, inFunction, definitionMap, localNames);
+        collectNames(expr, inFunction, definitionMap, localNames);
+      }
+      case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+        collectNames(receiver, inFunction, definitionMap, localNames);
+        for (var arg : args) {
+          collectNames(arg, inFunction, definitionMap, localNames);
+        }
+      }
+    }
+  }
+
+  private boolean isBuiltinOperator(String name) {
+    return OPERATORS.contains(name) && !definitionMap.containsKey(name);
+  }
+
+  // analyzes the returned expression of a function in evaluation order
+  private final class Analysis {
+    private final Fun fun;
+    private final HashMap<String, Integer> useMap = new HashMap<>();
+    private final HashSet<String> usedAfterEffectSet = new HashSet<>();
+    private int size;
+    private boolean effect;
+    private boolean inlinable = true;
+
+    private Analysis(Fun fun) {
+      this.fun = fun;
+    }
+
+    private void visitAll(List<Expr> exprs) {
+      for (var expr : exprs) {
+        visit(expr);
+      }
+    }
+
+    private void visit(Expr expression) {
+      size++;
+      switch (expression) {
+        case Literal _ -> {}
+        case Identifier(String name, _) -> {
+          if (fun.parameters().contains(name)) {
+            useMap.merge(name, 1, Integer::sum);
+            if (effect) {
+              usedAfterEffectSet.add(name);
+            }
+            return;
+          }
+          if (name.equals("this") || name.equals(fun.name()) || localNames.contains(name)) {
+            inlinable = false;
+          }
+        }
+        case Call(Expr qualifier, List<Expr> args, _) -> {
+          visit(qualifier);
+          visitAll(args);
+          if (!(qualifier instanceof Identifier(String name, _) && isBuiltinOperator(name))) {
+            effect = true;
+          }
+        }
+        case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+          visit(receiver);
+          visitAll(args);
+          effect = true;
+        }
+        case FieldAccess(Expr receiver, _, _) -> visit(receiver);
+        case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+          visit(receiver);
+          visit(expr);
+          effect = true;
+        }
+        case ObjectLiteral(Map<String, Expr> initMap, _) -> visitAll(List.copyOf(initMap.values()));
+        case Block _, VarAssignment _, Fun _, Return _, If _, Loop _, Break _, Continue _ -> inlinable = false;
+      }
+    }
+  }
+
+  private void declare(Fun fun) {
+    var name = fun.name();
+    var parameters = fun.parameters();
+    var exprs = fun.body().exprs();
+    if (definitionMap.get(name) != 1 || localNames.contains(name)
+        || parameters.size() != Set.copyOf(parameters).size()
+        || exprs.size() != 1 || !(exprs.getFirst() instanceof Return(Expr expr, _))) {
+      return;
+    }
+    var analysis = new Analysis(fun);
+    analysis.visit(expr);
+    if (!analysis.inlinable || analysis.size > MAX_INLINE_SIZE) {
+      return;
+    }
+    candidateMap.put(name, new Candidate(parameters, expr, analysis.useMap, analysis.usedAfterEffectSet));
+  }
+
+  // true if evaluating the expression has no side effect,
+  // a field access is not pure, the receiver may not be an object
+  private boolean isPure(Expr expr) {
+    return switch (expr) {
+      case Literal _, Identifier _ -> true;
+      case Call(Identifier(String name, _), List<Expr> args, _) when isBuiltinOperator(name) ->
+          args.stream().allMatch(this::isPure);
+      default -> false;
+    };
+  }
+
+  // true if the argument can replace the parameter in the returned expression
+  private boolean canReplace(Candidate candidate, String parameter, Expr arg) {
+    if (arg instanceof Literal) {
+      return true;
+    }
+    if (candidate.usedAfterEffectSet.contains(parameter)) {
+      return false;
+    }
+    var useCount = candidate.useMap.getOrDefault(parameter, 0);
+    if (arg instanceof Identifier) {
+      return useCount != 0;
+    }
+    return isPure(arg) && useCount == 1;
+  }
+
+  private Expr inline(Call call) {
+    if (!(call.qualifier() instanceof Identifier(String name, _))
+        || !(candidateMap.get(name) instanceof Candidate candidate)
+        || candidate.parameters.size() != call.args().size()) {
+      return call;
+    }
+    var argumentMap = new HashMap<String, Expr>();
+    for (var i = 0; i < call.args().size(); i++) {
+      var parameter = candidate.parameters.get(i);
+      var arg = call.args().get(i);
+      if (!canReplace(candidate, parameter, arg)) {
+        return call;
+      }
+      argumentMap.put(parameter, arg);
+    }
+    return substitute(candidate.expr, argumentMap);
+  }
+
+  private static List<Expr> substituteAll(List<Expr> exprs, Map<String, Expr> argumentMap) {
+    return exprs.stream().map(expr -> substitute(expr, argumentMap)).toList();
+  }
+
+  // replaces the parameters by the arguments in the returned expression
+  private static Expr substitute(Expr expression, Map<String, Expr> argumentMap) {
+    return switch (expression) {
+      case Literal _ -> expression;
+      case Identifier(String name, _) -> argumentMap.getOrDefault(name, expression);
+      case Call(Expr qualifier, List<Expr> args, int lineNumber) ->
+          new Call(substitute(qualifier, argumentMap), substituteAll(args, argumentMap), lineNumber);
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) ->
+          new MethodCall(substitute(receiver, argumentMap), name, substituteAll(args, argumentMap), lineNumber);
+      case FieldAccess(Expr receiver, String name, int lineNumber) ->
+          new FieldAccess(substitute(receiver, argumentMap), name, lineNumber);
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) ->
+          new FieldAssignment(substitute(receiver, argumentMap), name, substitute(expr, argumentMap), lineNumber);
+      case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) ->
+          new ObjectLiteral(initMap.entrySet().stream()
+              .collect(toMap(Map.Entry::getKey, entry -> substitute(entry.getValue(), argumentMap),
+                  (_, _) -> { throw new AssertionError(); },
+                  LinkedHashMap::new)),
+              lineNumber);
+      case Block _, VarAssignment _, Fun _, Return _, If _, Loop _, Break _, Continue _ ->
+          throw new AssertionError(expression);
+    };
+  }
+
+  private List<Expr> visitAll(List<Expr> exprs) {
+    return exprs.stream().map(this::visit).toList();
+  }
+
+  private Expr visit(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, int lineNumber) -> new Block(visitAll(exprs), lineNumber);
+      case Literal _, Identifier _ -> expression;
+      case Call(Expr qualifier, List<Expr> args, int lineNumber) ->
+          inline(new Call(visit(qualifier), visitAll(args), lineNumber));
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) ->
+          new VarAssignment(name, visit(expr), declaration, lineNumber);
+      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) ->
+          new Fun(name, parameters, toplevel, (Block) visit(body), lineNumber);
+      case Return(Expr expr, int lineNumber) -> new Return(visit(expr), lineNumber);
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) ->
+          new If(visit(condition), (Block) visit(trueBlock), (Block) visit(falseBlock), lineNumber);
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) ->
+          new Loop(visit(condition), (Block) visit(body), (Block) visit(update), testFirst, lineNumber);
+      case Break _, Continue _ -> expression;
+      case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) ->
+          new ObjectLiteral(initMap.entrySet().stream()
+              .collect(toMap(Map.Entry::getKey, entry -> visit(entry.getValue()),
+                  (_, _) -> { throw new AssertionError(); },
+                  LinkedHashMap::new)),
+              lineNumber);
+      case FieldAccess(Expr receiver, String name, int lineNumber) ->
+          new FieldAccess(visit(receiver), name, lineNumber);
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) ->
+          new FieldAssignment(visit(receiver), name, visit(expr), lineNumber);
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) ->
+          new MethodCall(visit(receiver), name, visitAll(args), lineNumber);
+    };
+  }
+}
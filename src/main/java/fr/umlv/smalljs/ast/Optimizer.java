@@ -0,0 +1,250 @@
+package fr.umlv.smalljs.ast;
+
+import static java.util.stream.Collectors.toMap;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.Statement;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// simplifies the tree of a script before it is executed by any of the engines:
+// - a call to a small function is replaced by the returned expression (see Inliner),
+// - a call to a builtin operator on two int literals is replaced by its result,
+// - an if with a condition that is always true or always false is replaced by the executed block,
+// - a while or a for with a condition that is always false is removed,
+// - an expression statement without side effect (its value is just popped) is removed.
+// The engines do not agree on everything, 0 is false and undefined is true for the AST interpreter
+// and the stack interpreter but 0 is true and undefined is false for the JVM backend,
+// and a comparison returns 1 or 0 except for the JVM backend that returns a boolean,
+// so only the results that are the same for all the engines are used.
+public final class Optimizer {
+  private static final Set<String> COMPARISON_OPERATORS = Set.of("==", "!=", "<", "<=", ">", ">=");
+
+  // the names that the script may redefine, a builtin operator with one of these names is not folded
+  private final Set<String> definedNames;
+
+  private Optimizer(Set<String> definedNames) {
+    this.definedNames = definedNames;
+  }
+
+  public static Script optimize(Script script) {
+    // inline first, so the operators of the inlined functions on literals are folded
+    var body = Inliner.inline(script.body());
+    var definedNames = new HashSet<String>();
+    collectDefinedNames(body, definedNames);
+    var optimizer = new Optimizer(definedNames);
+    return new Script(optimizer.visitBlock(body));
+  }
+
+  private static void collectDefinedNames(Expr expression, Set<String> names) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          collectDefinedNames(expr, names);
+        }
+      }
+      case Literal _, Identifier _ -> {}
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        collectDefinedNames(qualifier, names);
+        for (var arg : args) {
+          collectDefinedNames(arg, names);
+        }
+      }
+      case VarAssignment(String name, Expr expr, _, _) -> {
+        names.add(name);
+        collectDefinedNames(expr, names);
+      }
+      case Fun(String name, List<String> parameters, _, Block body, _) -> {
+        names.add(name);
+        names.addAll(parameters);
+        collectDefinedNames(body, names);
+      }
+      case Return(Expr expr, _) -> collectDefinedNames(expr, names);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        collectDefinedNames(condition, names);
+        collectDefinedNames(trueBlock, names);
+        collectDefinedNames(falseBlock, names);
+      }
+      case Loop(Expr condition, Block body, Block update, _, _) -> {
+        collectDefinedNames(condition, names);
+        collectDefinedNames(body, names);
+        collectDefinedNames(update, names);
+      }
+      case Break _, Continue _ -> {}
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        for (var expr : initMap.values()) {
+          collectDefinedNames(expr, names);
+        }
+      }
+      case FieldAccess(Expr receiver, _, _) -> collectDefinedNames(receiver, names);
+      case FieldAssignment(Expr receiver, String name, Expr expr, _) -> {
+        // a field of globalThis is a global variable
+        names.add(name);
+        collectDefinedNames(receiver, names);
+        collectDefinedNames(expr, names);
+      }
+      case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+        collectDefinedNames(receiver, names);
+        for (var arg : args) {
+          collectDefinedNames(arg, names);
+        }
+      }
+    }
+  }
+
+  // true if the block declares a variable or a function, such a block can not be removed
+  // because the declaration is visible outside the block
+  private static boolean declares(Block block) {
+    for (var expr : block.exprs()) {
+      switch (expr) {
+        case VarAssignment(_, _, boolean declaration, _) when declaration -> { return true; }
+        case Fun fun when fun.toplevel() -> { return true; }
+        case Block innerBlock when declares(innerBlock) -> { return true; }
+        case If(_, Block trueBlock, Block falseBlock, _) when declares(trueBlock) || declares(falseBlock) -> { return true; }
+        case Loop(_, Block body, Block update, _, _) when declares(body) || declares(update) -> { return true; }
+        default -> {}
+      }
+    }
+    return false;
+  }
+
+  // true if evaluating the expression has no side effect and can not fail
+  private static boolean isPure(Expr expr) {
+    return switch (expr) {
+      case Literal _ -> true;
+      case Fun fun -> !fun.toplevel();
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> initMap.values().stream().allMatch(Optimizer::isPure);
+      default -> false;
+    };
+  }
+
+  private Block visitBlock(Block block) {
+    var exprs = new ArrayList<Expr>();
+    for (var expr : block.exprs()) {
+      var newExpr = visit(expr);
+      if (newExpr instanceof Block innerBlock) {
+        // a block has no scope, so it can be inlined
+        exprs.addAll(innerBlock.exprs());
+        continue;
+      }
+      if (!(newExpr instanceof Statement) && isPure(newExpr)) {
+        // the value is popped
+        continue;
+      }
+      exprs.add(newExpr);
+    }
+    return new Block(exprs, block.lineNumber());
+  }
+
+  private List<Expr> visitAll(List<Expr> exprs) {
+    return exprs.stream().map(this::visit).toList();
+  }
+
+  private Expr visit(Expr expression) {
+    return switch (expression) {
+      case Block block -> visitBlock(block);
+      case Literal _, Identifier _ -> expression;
+      case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
+        var call = new Call(visit(qualifier), visitAll(args), lineNumber);
+        yield fold(call) instanceof Integer value ? new Literal(value, lineNumber) : call;
+      }
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) ->
+          new VarAssignment(name, visit(expr), declaration, lineNumber);
+      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) ->
+          new Fun(name, parameters, toplevel, visitBlock(body), lineNumber);
+      case Return(Expr expr, int lineNumber) -> new Return(visit(expr), lineNumber);
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
+        var newCondition = visit(condition);
+        var newTrueBlock = visitBlock(trueBlock);
+        var newFalseBlock = visitBlock(falseBlock);
+        var truth = truth(newCondition);
+        if (truth == Boolean.TRUE && !declares(newFalseBlock)) {
+          yield newTrueBlock;
+        }
+        if (truth == Boolean.FALSE && !declares(newTrueBlock)) {
+          yield newFalseBlock;
+        }
+        yield new If(newCondition, newTrueBlock, newFalseBlock, lineNumber);
+      }
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) -> {
+        var newCondition = visit(condition);
+        var newBody = visitBlock(body);
+        var newUpdate = visitBlock(update);
+        if (testFirst && truth(newCondition) == Boolean.FALSE && !declares(newBody) && !declares(newUpdate)) {
+          // the body is never executed
+          yield new Block(List.of(), lineNumber);
+        }
+        yield new Loop(newCondition, newBody, newUpdate, testFirst, lineNumber);
+      }
+      case Break _, Continue _ -> expression;
+      case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) ->
+          new ObjectLiteral(initMap.entrySet().stream()
+              .collect(toMap(Map.Entry::getKey, entry -> visit(entry.getValue()),
+                  (_, _) -> { throw new AssertionError(); },
+                  LinkedHashMap::new)),
+              lineNumber);
+      case FieldAccess(Expr receiver, String name, int lineNumber) ->
+          new FieldAccess(visit(receiver), name, lineNumber);
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) ->
+          new FieldAssignment(visit(receiver), name, visit(expr), lineNumber);
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) ->
+          new MethodCall(visit(receiver), name, visitAll(args), lineNumber);
+    };
+  }
+
+  // returns the value of a call to a builtin operator on two int literals, an Integer for an arithmetic
+  // operator, a Boolean for a comparison operator or null if the call can not be evaluated
+  private Object fold(Call call) {
+    if (!(call.qualifier() instanceof Identifier(String name, _))
+        || definedNames.contains(name)
+        || call.args().size() != 2
+        || !(call.args().get(0) instanceof Literal(Integer left, _))
+        || !(call.args().get(1) instanceof Literal(Integer right, _))) {
+      return null;
+    }
+    return switch (name) {
+      case "+" -> left + right;
+      case "-" -> left - right;
+      case "*" -> left * right;
+      // a division by zero fails at runtime
+      case "/" -> right == 0 ? null : left / right;
+      case "%" -> right == 0 ? null : left % right;
+      case "==" -> left.intValue() == right.intValue();
+      case "!=" -> left.intValue() != right.intValue();
+      case "<" -> left < right;
+      case "<=" -> left <= right;
+      case ">" -> left > right;
+      case ">=" -> left >= right;
+      default -> null;
+    };
+  }
+
+  // returns if a condition is always true or always false for all the engines, or null if it is not known
+  private Boolean truth(Expr condition) {
+    return switch (condition) {
+      case Literal(Integer value, _) -> value != 0 ? true : null;
+      case Literal(String _, _) -> true;
+      case Call call when call.qualifier() instanceof Identifier(String name, _)
+          && COMPARISON_OPERATORS.contains(name) -> (Boolean) fold(call);
+      default -> null;
+    };
+  }
+}
@@ -2,44 +2,177 @@ package fr.umlv.smalljs.astinterp;
 
 import fr.umlv.smalljs.ast.Expr;
 import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
 import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
 import fr.umlv.smalljs.ast.Expr.FieldAccess;
 import fr.umlv.smalljs.ast.Expr.FieldAssignment;
 import fr.umlv.smalljs.ast.Expr.Fun;
 import fr.umlv.smalljs.ast.Expr.Identifier;
 import fr.umlv.smalljs.ast.Expr.If;
 import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
 import fr.umlv.smalljs.ast.Expr.MethodCall;
 import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
 import fr.umlv.smalljs.ast.Expr.Return;
 import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.ast.Optimizer;
 import fr.umlv.smalljs.ast.Script;
-import fr.umlv.smalljs.rt.Failure;
+import fr.umlv.smalljs.astinterp.Node.BlockNode;
+import fr.umlv.smalljs.astinterp.Node.BreakNode;
+import fr.umlv.smalljs.astinterp.Node.CallNode;
+import fr.umlv.smalljs.astinterp.Node.CapturedCellReadNode;
+import fr.umlv.smalljs.astinterp.Node.CapturedCellWriteNode;
+import fr.umlv.smalljs.astinterp.Node.CapturedReadNode;
+import fr.umlv.smalljs.astinterp.Node.ContinueNode;
+import fr.umlv.smalljs.astinterp.Node.FieldAccessNode;
+import fr.umlv.smalljs.astinterp.Node.FieldAssignmentNode;
+import fr.umlv.smalljs.astinterp.Node.FunNode;
+import fr.umlv.smalljs.astinterp.Node.GlobalReadNode;
+import fr.umlv.smalljs.astinterp.Node.GlobalWriteNode;
+import fr.umlv.smalljs.astinterp.Node.IfNode;
+import fr.umlv.smalljs.astinterp.Node.LiteralNode;
+import fr.umlv.smalljs.astinterp.Node.LocalCellReadNode;
+import fr.umlv.smalljs.astinterp.Node.LocalCellWriteNode;
+import fr.umlv.smalljs.astinterp.Node.LocalReadNode;
+import fr.umlv.smalljs.astinterp.Node.LocalWriteNode;
+import fr.umlv.smalljs.astinterp.Node.LoopNode;
+import fr.umlv.smalljs.astinterp.Node.MethodCallNode;
+import fr.umlv.smalljs.astinterp.Node.ObjectLiteralNode;
+import fr.umlv.smalljs.astinterp.Node.OperatorCallNode;
+import fr.umlv.smalljs.astinterp.Node.ReturnNode;
 import fr.umlv.smalljs.rt.JSObject;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
-import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toMap;
 
 public final class ASTInterpreter {
-  private static JSObject asJSObject(Object value, int lineNumber) {
-    if (!(value instanceof JSObject jsObject)) {
-      throw new Failure("at line " + lineNumber + ", type error " + value + " is not a JSObject");
+  // creates the JS function of a Fun from the invoker that interprets its body,
+  // inGlobalScope is true if the function is created by the top level code so it can not capture
+  // a local variable, by default the function is always interpreted
+  @FunctionalInterface
+  public interface FunctionFactory {
+    JSObject create(Fun fun, boolean inGlobalScope, JSObject.Invoker invoker);
+
+    // creates the on-stack replacement of the loop at statementIndex in the body of a function
+    // that captures nothing, variables are the names of the parameters and the local variables,
+    // by default the loop is always interpreted
+    default OnStackReplacement onStackReplacement(Fun fun, int statementIndex, List<String> variables) {
+      return null;
+    }
+
+    // creates the on-stack replacement of the loop at statementIndex in the top level code,
+    // by default the loop is always interpreted
+    default OnStackReplacement onStackReplacement(Block script, int statementIndex) {
+      return null;
     }
-    return jsObject;
   }
 
-  private static Object execute(Expr.Block body, JSObject env) {
-    // initialize declared variables to UNDEFINED
-    visitVariable(body, env);
-    // interpret the AST
-    return visit(body, env);
+  // counts the back edges of a loop and provides its continuation once the loop is hot and compiled.
+  // For a loop of a function, the continuation runs the loop from its condition then the statements that follow
+  // the loop in the body of the function, it is called with this as receiver and the values of the variables
+  // as arguments and returns the value returned by the function.
+  // For a loop of the top level code, the continuation only runs the loop from its condition,
+  // it is called with undefined as receiver and no argument
+  @FunctionalInterface
+  public interface OnStackReplacement {
+    // called at each back edge, returns the continuation or null if the loop stays interpreted for now
+    JSObject.Invoker backEdge();
+  }
+
+  // the invoker of a function created by a factory that interprets the function then compiles it,
+  // while the function is interpreted, a tail call to the function is executed by the caller
+  // so the Java stack does not grow
+  public interface TieredInvoker extends JSObject.Invoker {
+    // called once by a tail call, returns the invoker given to the factory if the call is interpreted
+    // or null if the function is compiled
+    JSObject.Invoker interpreter();
+  }
+
+  private static final FunctionFactory INTERPRETED = (fun, _, invoker) -> JSObject.newFunction(fun.name(), invoker);
+
+  // the builtin operators, a call to an operator is done on ints directly
+  // while the operator is the builtin and the arguments are ints
+  @SuppressWarnings("unchecked")
+  enum Operator {
+    ADD("+", (_, args) -> (Integer) args[0] + (Integer) args[1]),
+    SUB("-", (_, args) -> (Integer) args[0] - (Integer) args[1]),
+    DIV("/", (_, args) -> (Integer) args[0] / (Integer) args[1]),
+    MUL("*", (_, args) -> (Integer) args[0] * (Integer) args[1]),
+    REM("%", (_, args) -> (Integer) args[0] % (Integer) args[1]),
+    EQ("==", (_, args) -> args[0].equals(args[1]) ? 1 : 0),
+    NE("!=", (_, args) -> !args[0].equals(args[1]) ? 1 : 0),
+    LT("<", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0) ? 1 : 0),
+    LE("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0) ? 1 : 0),
+    GT(">", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0) ? 1 : 0),
+    GE(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0) ? 1 : 0);
+
+    private final String name;
+    private final JSObject function;
+
+    Operator(String name, JSObject.Invoker invoker) {
+      this.name = name;
+      this.function = JSObject.newFunction(name, invoker);
+    }
+
+    // same semantics as the builtin function on ints
+    int applyAsInt(int a, int b) {
+      return switch (this) {
+        case ADD -> a + b;
+        case SUB -> a - b;
+        case DIV -> a / b;
+        case MUL -> a * b;
+        case REM -> a % b;
+        case EQ -> a == b ? 1 : 0;
+        case NE -> a != b ? 1 : 0;
+        case LT -> a < b ? 1 : 0;
+        case LE -> a <= b ? 1 : 0;
+        case GT -> a > b ? 1 : 0;
+        case GE -> a >= b ? 1 : 0;
+      };
+    }
+
+    boolean isComparison() {
+      return switch (this) {
+        case ADD, SUB, DIV, MUL, REM -> false;
+        case EQ, NE, LT, LE, GT, GE -> true;
+      };
+    }
+
+    private static final Map<String, Operator> OPERATOR_MAP =
+        Arrays.stream(values()).collect(toMap(operator -> operator.name, operator -> operator));
+  }
+
+  // the state of an interpretation, builtinOperators are the operators of the global environment
+  // when the interpretation starts indexed by Operator.ordinal(), booleanComparisons is true
+  // if their comparisons return a Boolean instead of 1 or 0
+  record Context(JSObject globalEnv, FunctionFactory factory, JSObject[] builtinOperators, boolean booleanComparisons) {
+    private Context(JSObject globalEnv, FunctionFactory factory, boolean booleanComparisons) {
+      this(globalEnv, factory,
+          Arrays.stream(Operator.values())
+              .map(operator -> globalEnv.lookupOrDefault(operator.name, null))
+              .toArray(JSObject[]::new),
+          booleanComparisons);
+    }
+
+    JSObject builtinOperator(Operator operator) {
+      return builtinOperators[operator.ordinal()];
+    }
+  }
+
+  private static void execute(Script script, JSObject globalEnv, boolean booleanComparisons, FunctionFactory factory) {
+    var body = Optimizer.optimize(script).body();
+    var node = createScriptBody(body, Resolver.resolve(body), new Context(globalEnv, factory, booleanComparisons));
+    // initialize the declared global variables to UNDEFINED
+    visitVariable(body, globalEnv);
+    // interpret the tree of nodes, the top level code has no frame
+    node.execute(null);
   }
 
   private static void visitVariable(Expr expression, JSObject env) {
@@ -58,114 +191,134 @@ public final class ASTInterpreter {
         visitVariable(trueBlock, env);
         visitVariable(falseBlock, env);
       }
-      case Literal _,Call _,Identifier _,Fun _,Return _,ObjectLiteral _,FieldAccess _,FieldAssignment _,MethodCall _ -> {
+      case Loop(_, Block body, Block update, _, _) -> {
+        visitVariable(body, env);
+        visitVariable(update, env);
+      }
+      case Literal _,Call _,Identifier _,Fun _,Return _,ObjectLiteral _,FieldAccess _,FieldAssignment _,MethodCall _,
+           Break _,Continue _ -> {
         // do nothing
       }
     }
     ;
   }
 
-  static Object visit(Expr expression, JSObject env) {
-    return switch (expression) {
-      case Block(List<Expr> exprs, int lineNumber) -> {
-        for (var expr : exprs) {
-          visit(expr, env);
-        }
-        yield UNDEFINED;
+  private static Node[] createNodes(List<Expr> exprs, Resolver resolver, Context context) {
+    return exprs.stream().map(expr -> createNode(expr, resolver, context)).toArray(Node[]::new);
+  }
+
+  private static Node createCallNode(Call call, boolean tail, Resolver resolver, Context context) {
+    var qualifier = call.qualifier();
+    var args = call.args();
+    var qualifierNode = createNode(qualifier, resolver, context);
+    if (qualifier instanceof Identifier(String name, _) && resolver.address(qualifier) == null
+        && args.size() == 2 && Operator.OPERATOR_MAP.get(name) instanceof Operator operator) {
+      // optimistically, the operator is the builtin
+      return new OperatorCallNode(context, qualifierNode, createNode(args.get(0), resolver, context),
+          createNode(args.get(1), resolver, context), operator, call.lineNumber());
+    }
+    return new CallNode(qualifierNode, createNodes(args, resolver, context), tail, call.lineNumber());
+  }
+
+  private static Node createLoopNode(Loop loop, OnStackReplacement onStackReplacement, Resolver resolver, Context context) {
+    return new LoopNode(createNode(loop.condition(), resolver, context),
+        createNode(loop.body(), resolver, context), createNode(loop.update(), resolver, context), loop.testFirst(),
+        onStackReplacement);
+  }
+
+  // a loop that is a statement of the body of a function that captures nothing can leave the interpreter
+  // at a back edge (on-stack replacement), the values of the frame are the arguments of the continuation
+  private static Node createFunBody(Fun fun, Resolver.FunInfo funInfo, Resolver resolver, Context context) {
+    var exprs = fun.body().exprs();
+    var noCapture = funInfo.captureSources().length == 0 && funInfo.cellSlots().length == 0;
+    var nodes = new Node[exprs.size()];
+    for (var i = 0; i < nodes.length; i++) {
+      var expr = exprs.get(i);
+      if (noCapture && expr instanceof Loop loop
+          && context.factory().onStackReplacement(fun, i, funInfo.variables()) instanceof OnStackReplacement osr) {
+        nodes[i] = createLoopNode(loop, osr, resolver, context);
+        continue;
       }
-      case Literal(Object value, int lineNumber) -> value;
-      case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
-        var function = asJSObject(visit(qualifier, env), lineNumber);
-        var arguments = args.stream().map(arg -> visit(arg, env)).toArray();
-        yield function.invoke(UNDEFINED, arguments);
+      nodes[i] = createNode(expr, resolver, context);
+    }
+    return new BlockNode(nodes);
+  }
+
+  // a loop that is a statement of the top level code can leave the interpreter at a back edge,
+  // the continuation reads and writes the global variables
+  private static Node createScriptBody(Block body, Resolver resolver, Context context) {
+    var exprs = body.exprs();
+    var nodes = new Node[exprs.size()];
+    for (var i = 0; i < nodes.length; i++) {
+      var expr = exprs.get(i);
+      if (expr instanceof Loop loop
+          && context.factory().onStackReplacement(body, i) instanceof OnStackReplacement osr) {
+        nodes[i] = createLoopNode(loop, osr, resolver, context);
+        continue;
       }
+      nodes[i] = createNode(expr, resolver, context);
+    }
+    return new BlockNode(nodes);
+  }
+
+  // creates the tree of nodes from the tree of Expr, the variables are already resolved
+  private static Node createNode(Expr expression, Resolver resolver, Context context) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, int lineNumber) -> new BlockNode(createNodes(exprs, resolver, context));
+      case Literal(Object value, int lineNumber) -> new LiteralNode(value);
+      case Call call -> createCallNode(call, false, resolver, context);
       case Identifier(String name, int lineNumber) -> {
-        var value = env.lookupOrDefault(name, null);
-        if (value == null) {
-          throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
+        var address = resolver.address(expression);
+        if (address == null) {
+          yield new GlobalReadNode(context.globalEnv(), name, lineNumber);
         }
-        yield value;
+        var index = address.index();
+        if (address.captured()) {
+          yield address.boxed() ? new CapturedCellReadNode(index) : new CapturedReadNode(index);
+        }
+        yield address.boxed() ? new LocalCellReadNode(index) : new LocalReadNode(index);
       }
       case VarAssignment(String name, Expr expr, _, int lineNumber) -> {
-        var value = visit(expr, env);
-        var oldValue = env.lookupOrDefault(name, null);
-        if (oldValue == null) {
-          throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
+        var value = createNode(expr, resolver, context);
+        var address = resolver.address(expression);
+        if (address == null) {
+          yield new GlobalWriteNode(context.globalEnv(), name, lineNumber, value);
         }
-        env.register(name, value);
-        yield value;
-      }
-      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) -> {
-        JSObject.Invoker invoker = new JSObject.Invoker() {
-          @Override
-          public Object invoke(Object receiver, Object... args) {
-            // check the arguments length
-            if (args.length != parameters.size()) {
-              throw new Failure(
-                  "at line " + lineNumber + ", function " + name + " called with wrong number of parameters");
-            }
-            // create a new environment
-            var newEnv = JSObject.newEnv(env);
-            // add this and all the parameters
-            newEnv.register("this", receiver);
-            for (var i = 0; i < parameters.size(); i++) {
-              newEnv.register(parameters.get(i), args[i]);
-            }
-            // execute the body
-            try {
-              execute(body, newEnv);
-            } catch (ReturnError error) {
-              return error.getValue();
-            }
-            return UNDEFINED;
-          }
-        };
-        // create the JS function with the invoker
-        var function = JSObject.newFunction(name, invoker);
-        // register it into the global env if it's a toplevel
-        if (toplevel) {
-          env.register(name, function);
+        // an assigned variable is boxed if it is captured
+        var index = address.index();
+        if (address.captured()) {
+          yield new CapturedCellWriteNode(index, value);
         }
-        // yield the function
-        yield function;
+        yield address.boxed() ? new LocalCellWriteNode(index, value) : new LocalWriteNode(index, value);
       }
-      case Return(Expr expr, int lineNumber) -> {
-        var value = visit(expr, env);
-        throw new ReturnError(value);
-      }
-      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
-        var conditionValue = visit(condition, env);
-        if (conditionValue instanceof Integer conditionInt && conditionInt == 0) {
-          visit(falseBlock, env);
-        } else {
-          visit(trueBlock, env);
-        }
-        yield UNDEFINED;
+      case Fun fun -> {
+        var funInfo = resolver.funInfo(fun);
+        yield new FunNode(context, fun, funInfo, resolver.address(fun), createFunBody(fun, funInfo, resolver, context));
       }
+      case Return ret when ret.tailCall() -> new ReturnNode(createCallNode((Call) ret.expr(), true, resolver, context));
+      case Return(Expr expr, int lineNumber) -> new ReturnNode(createNode(expr, resolver, context));
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) ->
+          new IfNode(createNode(condition, resolver, context),
+              createNode(trueBlock, resolver, context), createNode(falseBlock, resolver, context));
+      case Loop loop -> createLoopNode(loop, null, resolver, context);
+      case Break _ -> new BreakNode();
+      case Continue _ -> new ContinueNode();
       case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
-        var object = JSObject.newObject(null);
-        initMap.forEach((key, expr) -> object.register(key, visit(expr, env)));
-        yield object;
-      }
-      case FieldAccess(Expr receiver, String name, int lineNumber) -> {
-        var object = asJSObject(visit(receiver, env), lineNumber);
-        yield object.lookupOrDefault(name, UNDEFINED);
-      }
-      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
-        var object = asJSObject(visit(receiver, env), lineNumber);
-        object.register(name, visit(expr, object));
-        yield UNDEFINED;
-      }
-      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
-        var object = asJSObject(visit(receiver, env), lineNumber);
-        var method = asJSObject(object.lookupOrDefault(name, null), lineNumber);
-        var arguments = args.stream().map(arg -> visit(arg, object)).toArray();
-        yield method.invoke(object, arguments);
+        // the layout is computed once per object literal
+        var layout = JSObject.layoutOf(List.copyOf(initMap.keySet()));
+        yield new ObjectLiteralNode(layout, createNodes(List.copyOf(initMap.values()), resolver, context));
       }
+      case FieldAccess(Expr receiver, String name, int lineNumber) ->
+          new FieldAccessNode(createNode(receiver, resolver, context), name, lineNumber);
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) ->
+          new FieldAssignmentNode(createNode(receiver, resolver, context), name,
+              createNode(expr, resolver, context), lineNumber);
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) ->
+          new MethodCallNode(createNode(receiver, resolver, context), name,
+              createNodes(args, resolver, context), lineNumber);
     };
   }
 
-  @SuppressWarnings("unchecked")
   private static JSObject createGlobalEnv(PrintStream outStream) {
     var globalEnv = JSObject.newEnv(null);
     globalEnv.register("globalThis", globalEnv);
@@ -174,27 +327,23 @@ public final class ASTInterpreter {
       outStream.println(Arrays.stream(args).map(Object::toString).collect(Collectors.joining(" ")));
       return UNDEFINED;
     }));
-    globalEnv.register("+", JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]));
-    globalEnv.register("-", JSObject.newFunction("-", (_, args) -> (Integer) args[0] - (Integer) args[1]));
-    globalEnv.register("/", JSObject.newFunction("/", (_, args) -> (Integer) args[0] / (Integer) args[1]));
-    globalEnv.register("*", JSObject.newFunction("*", (_, args) -> (Integer) args[0] * (Integer) args[1]));
-    globalEnv.register("%", JSObject.newFunction("%", (_, args) -> (Integer) args[0] % (Integer) args[1]));
-    globalEnv.register("==", JSObject.newFunction("==", (_, args) -> args[0].equals(args[1]) ? 1 : 0));
-    globalEnv.register("!=", JSObject.newFunction("!=", (_, args) -> !args[0].equals(args[1]) ? 1 : 0));
-    globalEnv.register("<",
-        JSObject.newFunction("<", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0) ? 1 : 0));
-    globalEnv.register("<=",
-        JSObject.newFunction("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0) ? 1 : 0));
-    globalEnv.register(">",
-        JSObject.newFunction(">", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0) ? 1 : 0));
-    globalEnv.register(">=",
-        JSObject.newFunction(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0) ? 1 : 0));
+    for (var operator : Operator.values()) {
+      globalEnv.register(operator.name, operator.function);
+    }
     return globalEnv;
   }
 
   public static void interpret(Script script, PrintStream outStream) {
     var globalEnv = createGlobalEnv(outStream);
-    var body = script.body();
-    execute(body, globalEnv);
+    execute(script, globalEnv, false, INTERPRETED);
+  }
+
+  // interpret the script in an existing global environment,
+  // the operators registered in the environment are called directly on ints, so they must have
+  // the semantics of the builtin operators, with the comparisons returning a Boolean if booleanComparisons
+  // is true or 1 and 0 otherwise, the factory decides how the functions are created
+  public static void interpret(Script script, JSObject globalEnv, boolean booleanComparisons,
+                               FunctionFactory factory) {
+    execute(script, globalEnv, booleanComparisons, factory);
   }
 }
@@ -0,0 +1,983 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
+
+import java.util.Arrays;
+
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.astinterp.ASTInterpreter.Context;
+import fr.umlv.smalljs.rt.Failure;
+import fr.umlv.smalljs.rt.JSObject;
+
+// an executable node of the AST interpreter, the tree of nodes is created once from the tree of Expr.
+// A node can specialize itself by replacing itself in its parent with a node that only handles the values
+// seen so far, a specialized node replaces itself with a more generic node if its guess is wrong.
+abstract class Node {
+  // maximum number of entries of an inline cache before it becomes generic
+  private static final int MAX_CACHE_DEPTH = 4;
+
+  // the completion of a statement that stops the execution of the enclosing blocks, a block or an if
+  // stops and returns it, no exception is thrown
+  private static final class Completion {
+    private final String name;
+
+    private Completion(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  // a return, the returned value is stored in the frame, it stops up to the function call
+  private static final Completion RETURN = new Completion("return");
+  // a break or a continue, it stops up to the innermost loop
+  private static final Completion BREAK = new Completion("break");
+  private static final Completion CONTINUE = new Completion("continue");
+
+  private Node parent;
+
+  abstract Object execute(Object[] frame);
+
+  final <N extends Node> N adopt(N child) {
+    ((Node) child).parent = this;
+    return child;
+  }
+
+  final Node[] adopt(Node[] children) {
+    for (var child : children) {
+      child.parent = this;
+    }
+    return children;
+  }
+
+  // replaces this node with the new node in the parent node
+  final <N extends Node> N replace(N node) {
+    parent.replaceChild(this, node);
+    ((Node) node).parent = parent;
+    return node;
+  }
+
+  // replaces the old child with the new child, the old child may have already been replaced
+  // by a reentrant execution, in that case, do nothing
+  void replaceChild(Node oldChild, Node newChild) {
+    throw new AssertionError("can not replace " + oldChild + " in " + this);
+  }
+
+  private static void replaceIn(Node[] children, Node oldChild, Node newChild) {
+    for (var i = 0; i < children.length; i++) {
+      if (children[i] == oldChild) {
+        children[i] = newChild;
+        return;
+      }
+    }
+  }
+
+  // returns the closure of a function interpreted by the AST interpreter or null
+  private static Closure closureOf(JSObject function) {
+    return function.invoker() instanceof Closure closure ? closure : null;
+  }
+
+  // returns the closure that interprets a tail call to the function or null,
+  // a function created by a tiered factory is interpreted until it is compiled
+  private static Closure tailClosureOf(JSObject function) {
+    var invoker = function.invoker();
+    if (invoker instanceof ASTInterpreter.TieredInvoker tieredInvoker) {
+      invoker = tieredInvoker.interpreter();
+    }
+    return invoker instanceof Closure closure ? closure : null;
+  }
+
+  static JSObject asJSObject(Object value, int lineNumber) {
+    if (!(value instanceof JSObject jsObject)) {
+      throw new Failure("at line " + lineNumber + ", type error " + value + " is not a JSObject");
+    }
+    return jsObject;
+  }
+
+  // 0 and false are false, all the other values are true
+  private static boolean isFalse(Object value) {
+    return value instanceof Integer integer && integer == 0 || value == Boolean.FALSE;
+  }
+
+  private static Object[] executeAll(Node[] nodes, Object[] frame) {
+    var values = new Object[nodes.length];
+    for (var i = 0; i < nodes.length; i++) {
+      values[i] = nodes[i].execute(frame);
+    }
+    return values;
+  }
+
+  // a variable captured by a closure that may change, shared by the frame that declares it and the closures
+  static final class Cell {
+    private Object value;
+
+    private Cell(Object value) {
+      this.value = value;
+    }
+  }
+
+  private static Object[] captures(Object[] frame) {
+    return (Object[]) frame[Resolver.CAPTURES_SLOT];
+  }
+
+  // reads the slot or the captured value, a Cell is not unboxed
+  private static Object load(Object[] frame, Resolver.Address address) {
+    return address.captured() ? captures(frame)[address.index()] : frame[address.index()];
+  }
+
+  private static void store(Object[] frame, Resolver.Address address, Object value) {
+    var raw = load(frame, address);
+    if (address.boxed()) {
+      ((Cell) raw).value = value;
+      return;
+    }
+    if (address.captured()) {
+      throw new AssertionError("a captured variable that is not boxed can not be assigned");
+    }
+    frame[address.index()] = value;
+  }
+
+  static final class BlockNode extends Node {
+    private final Node[] nodes;
+
+    BlockNode(Node[] nodes) {
+      this.nodes = adopt(nodes);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      for (var node : nodes) {
+        if (node.execute(frame) instanceof Completion completion) {
+          return completion;
+        }
+      }
+      return UNDEFINED;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      replaceIn(nodes, oldChild, newChild);
+    }
+  }
+
+  static final class LiteralNode extends Node {
+    private final Object value;
+
+    LiteralNode(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return value;
+    }
+  }
+
+  static final class LocalReadNode extends Node {
+    private final int slot;
+
+    LocalReadNode(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return frame[slot];
+    }
+  }
+
+  static final class LocalWriteNode extends Node {
+    private final int slot;
+    private Node value;
+
+    LocalWriteNode(int slot, Node value) {
+      this.slot = slot;
+      this.value = adopt(value);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var result = value.execute(frame);
+      frame[slot] = result;
+      return result;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  // a local variable captured by a closure and boxed in a Cell
+  static final class LocalCellReadNode extends Node {
+    private final int slot;
+
+    LocalCellReadNode(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return ((Cell) frame[slot]).value;
+    }
+  }
+
+  static final class LocalCellWriteNode extends Node {
+    private final int slot;
+    private Node value;
+
+    LocalCellWriteNode(int slot, Node value) {
+      this.slot = slot;
+      this.value = adopt(value);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var result = value.execute(frame);
+      ((Cell) frame[slot]).value = result;
+      return result;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  // a variable captured by value, it never changes
+  static final class CapturedReadNode extends Node {
+    private final int index;
+
+    CapturedReadNode(int index) {
+      this.index = index;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return captures(frame)[index];
+    }
+  }
+
+  static final class CapturedCellReadNode extends Node {
+    private final int index;
+
+    CapturedCellReadNode(int index) {
+      this.index = index;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return ((Cell) captures(frame)[index]).value;
+    }
+  }
+
+  static final class CapturedCellWriteNode extends Node {
+    private final int index;
+    private Node value;
+
+    CapturedCellWriteNode(int index, Node value) {
+      this.index = index;
+      this.value = adopt(value);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var result = value.execute(frame);
+      ((Cell) captures(frame)[index]).value = result;
+      return result;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  // the slot of the global variable is cached until the layout of the global environment changes
+  static final class GlobalReadNode extends Node {
+    private final JSObject globalEnv;
+    private final String name;
+    private final int lineNumber;
+    private Object cachedLayout;
+    private int cachedSlot;
+
+    GlobalReadNode(JSObject globalEnv, String name, int lineNumber) {
+      this.globalEnv = globalEnv;
+      this.name = name;
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var layout = globalEnv.layout();
+      if (layout != cachedLayout) {
+        cachedSlot = globalEnv.layoutSlot(name);
+        cachedLayout = layout;
+      }
+      if (cachedSlot == -1) {
+        throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
+      }
+      return globalEnv.fastAccess(cachedSlot);
+    }
+  }
+
+  static final class GlobalWriteNode extends Node {
+    private final JSObject globalEnv;
+    private final String name;
+    private final int lineNumber;
+    private Node value;
+
+    GlobalWriteNode(JSObject globalEnv, String name, int lineNumber, Node value) {
+      this.globalEnv = globalEnv;
+      this.name = name;
+      this.lineNumber = lineNumber;
+      this.value = adopt(value);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var result = value.execute(frame);
+      if (globalEnv.lookupOrDefault(name, null) == null) {
+        throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
+      }
+      globalEnv.register(name, result);
+      return result;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  // the function at runtime, the code of a function and the captured values (null if nothing is captured)
+  static final class Closure implements JSObject.Invoker {
+    private final FunNode funNode;
+    private final Object[] captures;
+
+    private Closure(FunNode funNode, Object[] captures) {
+      this.funNode = funNode;
+      this.captures = captures;
+    }
+
+    int parameterCount() {
+      return funNode.parameterCount;
+    }
+
+    // creates a new frame with the local variables initialized to UNDEFINED
+    // and the captured values, the parameters are not initialized
+    Object[] newFrame(Object receiver) {
+      var frame = funNode.frameTemplate.clone();
+      frame[Resolver.CAPTURES_SLOT] = captures;
+      frame[Resolver.THIS_SLOT] = receiver;
+      return frame;
+    }
+
+    // creates a new frame with the parameters initialized with the arguments
+    Object[] newFrame(Object receiver, Object[] args) {
+      // check the arguments length
+      if (args.length != funNode.parameterCount) {
+        throw new Failure(
+            "at line " + funNode.lineNumber + ", function " + funNode.name + " called with wrong number of parameters");
+      }
+      var frame = newFrame(receiver);
+      System.arraycopy(args, 0, frame, Resolver.FIRST_PARAMETER_SLOT, args.length);
+      return frame;
+    }
+
+    // executes the body with a frame created by newFrame() with the parameters initialized,
+    // a tail call returns the frame of the callee with the callee closure in its return slot,
+    // the callee is executed by the loop (a trampoline) so the Java stack does not grow
+    Object execute(Object[] frame) {
+      var funNode = this.funNode;
+      for (;;) {
+        // box the variables captured by the nested functions
+        for (var slot : funNode.cellSlots) {
+          frame[slot] = new Cell(frame[slot]);
+        }
+        if (funNode.body.execute(frame) != RETURN) {
+          return UNDEFINED;
+        }
+        var result = frame[Resolver.RETURN_SLOT];
+        if (!(result instanceof Object[] calleeFrame)) {  // a JS value is never an array
+          return result;
+        }
+        funNode = ((Closure) calleeFrame[Resolver.RETURN_SLOT]).funNode;
+        calleeFrame[Resolver.RETURN_SLOT] = null;
+        frame = calleeFrame;
+      }
+    }
+
+    @Override
+    public Object invoke(Object receiver, Object... args) {
+      return execute(newFrame(receiver, args));
+    }
+  }
+
+  static final class FunNode extends Node {
+    private final Context context;
+    private final Fun fun;
+    private final String name;
+    private final int parameterCount;
+    private final int lineNumber;
+    private final Object[] frameTemplate;  // a frame with the local variables initialized, never modified
+    private final int[] cellSlots;
+    private final Resolver.Address[] captureSources;
+    private final Resolver.Address address;  // null if the function is not toplevel or is a global
+    private Node body;
+
+    FunNode(Context context, Fun fun, Resolver.FunInfo funInfo, Resolver.Address address, Node body) {
+      this.context = context;
+      this.fun = fun;
+      this.name = fun.name();
+      this.parameterCount = fun.parameters().size();
+      this.lineNumber = fun.lineNumber();
+      // the local variables are known once for all the calls
+      var frameSize = funInfo.frameSize();
+      var frameTemplate = new Object[frameSize];
+      Arrays.fill(frameTemplate, Resolver.FIRST_PARAMETER_SLOT + parameterCount, frameSize, UNDEFINED);
+      this.frameTemplate = frameTemplate;
+      this.cellSlots = funInfo.cellSlots();
+      this.captureSources = funInfo.captureSources();
+      this.address = address;
+      this.body = adopt(body);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      // only capture the variables used by the function or its nested functions
+      Object[] captures = null;
+      if (captureSources.length != 0) {
+        captures = new Object[captureSources.length];
+        for (var i = 0; i < captures.length; i++) {
+          captures[i] = load(frame, captureSources[i]);
+        }
+      }
+      var closure = new Closure(this, captures);
+      // create the JS function with the closure as invoker
+      var function = context.factory().create(fun, frame == null, closure);
+      // register it into the current frame or the global env if it's a toplevel
+      if (fun.toplevel()) {
+        if (address != null) {
+          store(frame, address, function);
+        } else {
+          context.globalEnv().register(name, function);
+        }
+      }
+      return function;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == body) {
+        body = newChild;
+      }
+    }
+  }
+
+  static final class ReturnNode extends Node {
+    private Node value;
+
+    ReturnNode(Node value) {
+      this.value = adopt(value);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var result = value.execute(frame);
+      if (frame != null) {  // a return in the top level code stops the script
+        frame[Resolver.RETURN_SLOT] = result;
+      }
+      return RETURN;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  static final class IfNode extends Node {
+    private Node condition;
+    private final Node trueBlock;
+    private final Node falseBlock;
+
+    IfNode(Node condition, Node trueBlock, Node falseBlock) {
+      this.condition = adopt(condition);
+      this.trueBlock = adopt(trueBlock);
+      this.falseBlock = adopt(falseBlock);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      if (isFalse(condition.execute(frame))) {
+        return falseBlock.execute(frame);
+      }
+      return trueBlock.execute(frame);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == condition) {
+        condition = newChild;
+      }
+    }
+  }
+
+  static final class LoopNode extends Node {
+    private Node condition;
+    private final Node body;
+    private final Node update;
+    private final boolean testFirst;
+    private final ASTInterpreter.OnStackReplacement onStackReplacement;  // null if always interpreted
+
+    LoopNode(Node condition, Node body, Node update, boolean testFirst,
+             ASTInterpreter.OnStackReplacement onStackReplacement) {
+      this.condition = adopt(condition);
+      this.body = adopt(body);
+      this.update = adopt(update);
+      this.testFirst = testFirst;
+      this.onStackReplacement = onStackReplacement;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      if (testFirst && isFalse(condition.execute(frame))) {
+        return UNDEFINED;
+      }
+      for (;;) {
+        var completion = body.execute(frame);
+        if (completion == RETURN) {
+          return RETURN;
+        }
+        if (completion == BREAK) {
+          return UNDEFINED;
+        }
+        // the update is a block of expressions, it never completes abruptly
+        update.execute(frame);
+        // a back edge, the loop is a statement of the function body, so the continuation
+        // runs the end of the function with the values of the frame and returns its result,
+        // or the loop is a statement of the top level code (no frame), so the continuation runs the loop
+        if (onStackReplacement != null && onStackReplacement.backEdge() instanceof JSObject.Invoker continuation) {
+          if (frame == null) {
+            continuation.invoke(UNDEFINED);
+            return UNDEFINED;
+          }
+          frame[Resolver.RETURN_SLOT] = continuation.invoke(frame[Resolver.THIS_SLOT],
+              Arrays.copyOfRange(frame, Resolver.FIRST_PARAMETER_SLOT, frame.length));
+          return RETURN;
+        }
+        if (isFalse(condition.execute(frame))) {
+          return UNDEFINED;
+        }
+      }
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == condition) {
+        condition = newChild;
+      }
+    }
+  }
+
+  static final class BreakNode extends Node {
+    @Override
+    Object execute(Object[] frame) {
+      return BREAK;
+    }
+  }
+
+  static final class ContinueNode extends Node {
+    @Override
+    Object execute(Object[] frame) {
+      return CONTINUE;
+    }
+  }
+
+  static final class ObjectLiteralNode extends Node {
+    private final Object layout;
+    private final Node[] values;
+
+    ObjectLiteralNode(Object layout, Node[] values) {
+      this.layout = layout;
+      this.values = adopt(values);
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      return JSObject.newObject(null, layout, executeAll(values, frame));
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      replaceIn(values, oldChild, newChild);
+    }
+  }
+
+  static final class FieldAccessNode extends Node {
+    private Node receiver;
+    private FieldCacheNode cache;
+    private final int lineNumber;
+
+    FieldAccessNode(Node receiver, String name, int lineNumber) {
+      this.receiver = adopt(receiver);
+      this.cache = adopt(new UninitializedFieldCacheNode(name, 0));
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var object = asJSObject(receiver.execute(frame), lineNumber);
+      return cache.get(object);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == receiver) {
+        receiver = newChild;
+      } else if (oldChild == cache) {
+        cache = (FieldCacheNode) newChild;
+      }
+    }
+  }
+
+  static final class FieldAssignmentNode extends Node {
+    private Node receiver;
+    private final String name;
+    private Node value;
+    private final int lineNumber;
+
+    FieldAssignmentNode(Node receiver, String name, Node value, int lineNumber) {
+      this.receiver = adopt(receiver);
+      this.name = name;
+      this.value = adopt(value);
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var object = asJSObject(receiver.execute(frame), lineNumber);
+      object.register(name, value.execute(frame));
+      return UNDEFINED;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == receiver) {
+        receiver = newChild;
+      } else if (oldChild == value) {
+        value = newChild;
+      }
+    }
+  }
+
+  // a polymorphic inline cache of the slot of a field keyed by the layout of the object
+  abstract static class FieldCacheNode extends Node {
+    abstract Object get(JSObject object);
+
+    @Override
+    final Object execute(Object[] frame) {
+      throw new AssertionError();
+    }
+  }
+
+  static final class UninitializedFieldCacheNode extends FieldCacheNode {
+    private final String name;
+    private final int depth;
+
+    UninitializedFieldCacheNode(String name, int depth) {
+      this.name = name;
+      this.depth = depth;
+    }
+
+    @Override
+    Object get(JSObject object) {
+      if (depth == MAX_CACHE_DEPTH) {
+        return replace(new GenericFieldCacheNode(name)).get(object);
+      }
+      var slot = object.layoutSlot(name);
+      if (slot == -1) {
+        // the field is in a prototype or does not exist
+        return object.lookupOrDefault(name, UNDEFINED);
+      }
+      var next = new UninitializedFieldCacheNode(name, depth + 1);
+      return replace(new CachedFieldCacheNode(object.layout(), slot, next)).get(object);
+    }
+  }
+
+  static final class CachedFieldCacheNode extends FieldCacheNode {
+    private final Object layout;
+    private final int slot;
+    private FieldCacheNode next;
+
+    CachedFieldCacheNode(Object layout, int slot, FieldCacheNode next) {
+      this.layout = layout;
+      this.slot = slot;
+      this.next = adopt(next);
+    }
+
+    @Override
+    Object get(JSObject object) {
+      if (object.layout() == layout) {
+        return object.fastAccess(slot);
+      }
+      return next.get(object);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == next) {
+        next = (FieldCacheNode) newChild;
+      }
+    }
+  }
+
+  static final class GenericFieldCacheNode extends FieldCacheNode {
+    private final String name;
+
+    GenericFieldCacheNode(String name) {
+      this.name = name;
+    }
+
+    @Override
+    Object get(JSObject object) {
+      return object.lookupOrDefault(name, UNDEFINED);
+    }
+  }
+
+  // a call to a builtin operator, the operation is done on ints directly
+  // while the operator is the builtin and the operands are ints
+  static final class OperatorCallNode extends Node {
+    private Node qualifier;
+    private Node left;
+    private Node right;
+    private final ASTInterpreter.Operator operator;
+    private final JSObject builtin;
+    private final boolean booleanResult;
+    private final int lineNumber;
+
+    OperatorCallNode(Context context, Node qualifier, Node left, Node right, ASTInterpreter.Operator operator, int lineNumber) {
+      this.qualifier = adopt(qualifier);
+      this.left = adopt(left);
+      this.right = adopt(right);
+      this.operator = operator;
+      this.builtin = context.builtinOperator(operator);
+      this.booleanResult = context.booleanComparisons() && operator.isComparison();
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var function = qualifier.execute(frame);
+      var leftValue = left.execute(frame);
+      var rightValue = right.execute(frame);
+      if (function == builtin && leftValue instanceof Integer a && rightValue instanceof Integer b) {
+        var result = operator.applyAsInt(a, b);
+        if (booleanResult) {
+          return result == 1;
+        }
+        return result;
+      }
+      // wrong guess, use a generic call (never a tail call, a redefined operator is rare)
+      replace(new CallNode(qualifier, new Node[] { left, right }, false, lineNumber));
+      return asJSObject(function, lineNumber).invoke(UNDEFINED, leftValue, rightValue);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == qualifier) {
+        qualifier = newChild;
+      } else if (oldChild == left) {
+        left = newChild;
+      } else if (oldChild == right) {
+        right = newChild;
+      }
+    }
+  }
+
+  static final class CallNode extends Node {
+    private Node qualifier;
+    private final Node[] args;
+    private DispatchNode dispatch;
+    private final int lineNumber;
+
+    // tail is true if the call is the expression of a return (see Return.tailCall())
+    CallNode(Node qualifier, Node[] args, boolean tail, int lineNumber) {
+      this.qualifier = adopt(qualifier);
+      this.args = adopt(args);
+      this.dispatch = adopt(new UninitializedDispatchNode(0, tail));
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var function = asJSObject(qualifier.execute(frame), lineNumber);
+      return dispatch.dispatch(function, UNDEFINED, args, frame);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == qualifier) {
+        qualifier = newChild;
+      } else if (oldChild == dispatch) {
+        dispatch = (DispatchNode) newChild;
+      } else {
+        replaceIn(args, oldChild, newChild);
+      }
+    }
+  }
+
+  static final class MethodCallNode extends Node {
+    private Node receiver;
+    private FieldCacheNode methodCache;
+    private final Node[] args;
+    private DispatchNode dispatch;
+    private final int lineNumber;
+
+    MethodCallNode(Node receiver, String name, Node[] args, int lineNumber) {
+      this.receiver = adopt(receiver);
+      this.methodCache = adopt(new UninitializedFieldCacheNode(name, 0));
+      this.args = adopt(args);
+      this.dispatch = adopt(new UninitializedDispatchNode(0, false));
+      this.lineNumber = lineNumber;
+    }
+
+    @Override
+    Object execute(Object[] frame) {
+      var object = asJSObject(receiver.execute(frame), lineNumber);
+      var method = asJSObject(methodCache.get(object), lineNumber);
+      return dispatch.dispatch(method, object, args, frame);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == receiver) {
+        receiver = newChild;
+      } else if (oldChild == methodCache) {
+        methodCache = (FieldCacheNode) newChild;
+      } else if (oldChild == dispatch) {
+        dispatch = (DispatchNode) newChild;
+      } else {
+        replaceIn(args, oldChild, newChild);
+      }
+    }
+  }
+
+  // a polymorphic inline cache of the functions called, an interpreted function is called directly
+  // instead of going through its method handle, the arguments are evaluated by the dispatch node
+  // in the frame of the caller.
+  // For a tail call in a function, an interpreted function is not executed, the frame of the callee
+  // is returned to the caller Closure.execute() that executes it, the callee closure is stored
+  // in the return slot of the frame
+  abstract static class DispatchNode extends Node {
+    abstract Object dispatch(JSObject function, Object receiver, Node[] args, Object[] frame);
+
+    @Override
+    final Object execute(Object[] frame) {
+      throw new AssertionError();
+    }
+  }
+
+  static final class UninitializedDispatchNode extends DispatchNode {
+    private final int depth;
+    private final boolean tail;
+
+    UninitializedDispatchNode(int depth, boolean tail) {
+      this.depth = depth;
+      this.tail = tail;
+    }
+
+    @Override
+    Object dispatch(JSObject function, Object receiver, Node[] args, Object[] frame) {
+      if (depth == MAX_CACHE_DEPTH) {
+        return replace(new GenericDispatchNode(tail)).dispatch(function, receiver, args, frame);
+      }
+      var closure = closureOf(function);
+      if (closure == null || closure.parameterCount() != args.length) {
+        // not an interpreted function or a wrong number of arguments
+        return GenericDispatchNode.dispatch(function, receiver, executeAll(args, frame), tail, frame);
+      }
+      var next = new UninitializedDispatchNode(depth + 1, tail);
+      return replace(new DirectDispatchNode(function, closure, tail, next)).dispatch(function, receiver, args, frame);
+    }
+  }
+
+  // the arguments are evaluated directly into the frame of the callee, no array of arguments is allocated
+  static final class DirectDispatchNode extends DispatchNode {
+    private final JSObject function;
+    private final Closure closure;
+    private final boolean tail;
+    private DispatchNode next;
+
+    DirectDispatchNode(JSObject function, Closure closure, boolean tail, DispatchNode next) {
+      this.function = function;
+      this.closure = closure;
+      this.tail = tail;
+      this.next = adopt(next);
+    }
+
+    @Override
+    Object dispatch(JSObject function, Object receiver, Node[] args, Object[] frame) {
+      if (function != this.function) {
+        return next.dispatch(function, receiver, args, frame);
+      }
+      var closure = this.closure;
+      var calleeFrame = closure.newFrame(receiver);
+      for (var i = 0; i < args.length; i++) {
+        calleeFrame[Resolver.FIRST_PARAMETER_SLOT + i] = args[i].execute(frame);
+      }
+      if (tail && frame != null) {  // a return in the top level code is not in a function
+        calleeFrame[Resolver.RETURN_SLOT] = closure;
+        return calleeFrame;
+      }
+      return closure.execute(calleeFrame);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+      if (oldChild == next) {
+        next = (DispatchNode) newChild;
+      }
+    }
+  }
+
+  static final class GenericDispatchNode extends DispatchNode {
+    private final boolean tail;
+
+    GenericDispatchNode(boolean tail) {
+      this.tail = tail;
+    }
+
+    @Override
+    Object dispatch(JSObject function, Object receiver, Node[] args, Object[] frame) {
+      return dispatch(function, receiver, executeAll(args, frame), tail, frame);
+    }
+
+    private static Object dispatch(JSObject function, Object receiver, Object[] args, boolean tail, Object[] frame) {
+      if (tail && frame != null && tailClosureOf(function) instanceof Closure closure) {
+        var calleeFrame = closure.newFrame(receiver, args);
+        calleeFrame[Resolver.RETURN_SLOT] = closure;
+        return calleeFrame;
+      }
+      var closure = closureOf(function);
+      if (closure != null) {
+        return closure.invoke(receiver, args);
+      }
+      return function.invoke(receiver, args);
+    }
+  }
+}
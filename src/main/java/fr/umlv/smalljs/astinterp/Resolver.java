@@ -0,0 +1,270 @@
+package fr.umlv.smalljs.astinterp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+
+// resolves once, before the interpretation, each variable of a script to its address.
+// A function is executed with a frame, an array that contains the values captured by the closure at slot 0,
+// this at slot 1, the returned value at slot 2, the parameters then the local variables
+// (the declared variables and the declared functions).
+// A closure only captures the variables of the enclosing functions that it references (or that a nested
+// function references), a function that captures nothing has no captured values at all.
+// A captured variable that may change after the closure is created (a local variable or a parameter
+// that is assigned) is boxed in a Cell shared by the frame that declares it and the closures.
+// A variable that is not local to a function or to an enclosing function is a global variable,
+// it is stored in the global environment and has no address.
+final class Resolver {
+  static final int CAPTURES_SLOT = 0;
+  static final int THIS_SLOT = 1;
+  static final int RETURN_SLOT = 2;
+  static final int FIRST_PARAMETER_SLOT = 3;
+
+  // how a function accesses a variable, a slot in its frame or an index in the captured values of the closure,
+  // if the variable is boxed, the slot or the captured value is a Cell
+  record Address(boolean captured, int index, boolean boxed) {}
+
+  // the size of the frame, the slots that contain a Cell, how to find the captured values
+  // in the frame of the enclosing function and the names of the parameters and the local variables
+  // in the order of their slots (from FIRST_PARAMETER_SLOT)
+  record FunInfo(int frameSize, int[] cellSlots, Address[] captureSources, List<String> variables) {}
+
+  private static final class Variable {
+    private final FunScope owner;
+    private final int slot;
+    private final boolean parameter;
+    private boolean assigned;
+    private boolean captured;
+
+    private Variable(FunScope owner, int slot, boolean parameter) {
+      this.owner = owner;
+      this.slot = slot;
+      this.parameter = parameter;
+    }
+
+    private boolean boxed() {
+      return captured && (assigned || !parameter);
+    }
+  }
+
+  private static final class FunScope {
+    private final FunScope parent;
+    private final Fun fun;
+    private final HashMap<String, Variable> variableMap = new HashMap<>();
+    private final LinkedHashMap<Variable, Integer> captureMap = new LinkedHashMap<>();
+    private final ArrayList<String> variables = new ArrayList<>();
+    private int frameSize;
+
+    private FunScope(FunScope parent, Fun fun) {
+      this.parent = parent;
+      this.fun = fun;
+    }
+  }
+
+  private record Reference(Expr expr, FunScope scope, Variable variable) {}
+
+  private final ArrayList<FunScope> funScopes = new ArrayList<>();
+  private final ArrayList<Reference> references = new ArrayList<>();
+  private final IdentityHashMap<Expr, Address> addressMap = new IdentityHashMap<>();
+  private final IdentityHashMap<Fun, FunInfo> funInfoMap = new IdentityHashMap<>();
+
+  private Resolver() {}
+
+  // resolves all the variables of a script, the top level variables are global variables
+  static Resolver resolve(Block body) {
+    var resolver = new Resolver();
+    resolver.visit(body, null);
+    resolver.computeCaptures();
+    return resolver;
+  }
+
+  // returns the address of an identifier, a variable assignment or a declared function,
+  // or null if the variable is a global variable
+  Address address(Expr expr) {
+    return addressMap.get(expr);
+  }
+
+  FunInfo funInfo(Fun fun) {
+    return funInfoMap.get(fun);
+  }
+
+  private void reference(Expr expr, String name, FunScope scope, boolean assignment) {
+    for (var s = scope; s != null; s = s.parent) {
+      var variable = s.variableMap.get(name);
+      if (variable != null) {
+        variable.assigned |= assignment;
+        variable.captured |= variable.owner != scope;
+        references.add(new Reference(expr, scope, variable));
+        return;
+      }
+    }
+    // a global variable
+  }
+
+  private void computeCaptures() {
+    // a variable is captured by all the functions between the function that references it and
+    // the function that declares it
+    for (var reference : references) {
+      var variable = reference.variable;
+      for (var s = reference.scope; s != variable.owner; s = s.parent) {
+        s.captureMap.putIfAbsent(variable, s.captureMap.size());
+      }
+    }
+    for (var reference : references) {
+      var variable = reference.variable;
+      var address = variable.owner == reference.scope
+          ? new Address(false, variable.slot, variable.boxed())
+          : new Address(true, reference.scope.captureMap.get(variable), variable.boxed());
+      addressMap.put(reference.expr, address);
+    }
+    for (var funScope : funScopes) {
+      var cellSlots = funScope.variableMap.values().stream()
+          .filter(Variable::boxed)
+          .mapToInt(variable -> variable.slot)
+          .sorted()
+          .toArray();
+      var parent = funScope.parent;
+      var captureSources = funScope.captureMap.keySet().stream()
+          .map(variable -> variable.owner == parent
+              ? new Address(false, variable.slot, variable.boxed())
+              : new Address(true, parent.captureMap.get(variable), variable.boxed()))
+          .toArray(Address[]::new);
+      funInfoMap.put(funScope.fun,
+          new FunInfo(funScope.frameSize, cellSlots, captureSources, List.copyOf(funScope.variables)));
+    }
+  }
+
+  private void visitFunction(Fun fun, FunScope parent) {
+    var scope = new FunScope(parent, fun);
+    funScopes.add(scope);
+    var variableMap = scope.variableMap;
+    variableMap.put("this", new Variable(scope, THIS_SLOT, true));
+    // each parameter has its own slot, if two parameters have the same name, the last one wins
+    var parameters = fun.parameters();
+    for (var i = 0; i < parameters.size(); i++) {
+      variableMap.put(parameters.get(i), new Variable(scope, FIRST_PARAMETER_SLOT + i, true));
+    }
+    scope.variables.addAll(parameters);
+    // the local variables are computed once, not at each call
+    var locals = new LinkedHashSet<String>();
+    collectLocals(fun.body(), locals);
+    var slot = FIRST_PARAMETER_SLOT + parameters.size();
+    for (var local : locals) {
+      if (!variableMap.containsKey(local)) {
+        variableMap.put(local, new Variable(scope, slot++, false));
+        scope.variables.add(local);
+      }
+    }
+    scope.frameSize = slot;
+    visit(fun.body(), scope);
+  }
+
+  private static void collectLocals(Expr expression, LinkedHashSet<String> locals) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          collectLocals(expr, locals);
+        }
+      }
+      case VarAssignment(String name, _, boolean declaration, _) -> {
+        if (declaration) {
+          locals.add(name);
+        }
+      }
+      case Fun fun -> {
+        if (fun.toplevel()) {
+          locals.add(fun.name());
+        }
+      }
+      case If(_, Block trueBlock, Block falseBlock, _) -> {
+        collectLocals(trueBlock, locals);
+        collectLocals(falseBlock, locals);
+      }
+      case Loop(_, Block body, Block update, _, _) -> {
+        collectLocals(body, locals);
+        collectLocals(update, locals);
+      }
+      case Literal _, Call _, Identifier _, Return _, ObjectLiteral _, FieldAccess _, FieldAssignment _, MethodCall _,
+           Break _, Continue _ -> {
+        // do nothing
+      }
+    }
+  }
+
+  private void visit(Expr expression, FunScope scope) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          visit(expr, scope);
+        }
+      }
+      case Literal _ -> {}
+      case Identifier(String name, _) -> reference(expression, name, scope, false);
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        visit(qualifier, scope);
+        for (var arg : args) {
+          visit(arg, scope);
+        }
+      }
+      case VarAssignment(String name, Expr expr, _, _) -> {
+        visit(expr, scope);
+        reference(expression, name, scope, true);
+      }
+      case Fun fun -> {
+        if (fun.toplevel()) {
+          reference(fun, fun.name(), scope, true);
+        }
+        visitFunction(fun, scope);
+      }
+      case Return(Expr expr, _) -> visit(expr, scope);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        visit(condition, scope);
+        visit(trueBlock, scope);
+        visit(falseBlock, scope);
+      }
+      case Loop(Expr condition, Block body, Block update, _, _) -> {
+        visit(condition, scope);
+        visit(body, scope);
+        visit(update, scope);
+      }
+      case Break _, Continue _ -> {}
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        for (var expr : initMap.values()) {
+          visit(expr, scope);
+        }
+      }
+      case FieldAccess(Expr receiver, _, _) -> visit(receiver, scope);
+      case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+        visit(receiver, scope);
+        visit(expr, scope);
+      }
+      case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+        visit(receiver, scope);
+        for (var arg : args) {
+          visit(arg, scope);
+        }
+      }
+    }
+  }
+}
@@ -2,47 +2,176 @@ package fr.umlv.smalljs.jvminterp;
 
 import static java.lang.invoke.MethodType.genericMethodType;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.objectweb.asm.Opcodes.AASTORE;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
 import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
 import static org.objectweb.asm.Opcodes.ACC_STATIC;
 import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
 import static org.objectweb.asm.Opcodes.ARETURN;
 import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.GOTO;
 import static org.objectweb.asm.Opcodes.H_INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.IFNE;
+import static org.objectweb.asm.Opcodes.IF_ACMPNE;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INSTANCEOF;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.ISTORE;
+import static org.objectweb.asm.Opcodes.POP;
 import static org.objectweb.asm.Opcodes.V21;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.util.CheckClassAdapter;
 
 import fr.umlv.smalljs.ast.Expr;
 import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
 import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
 import fr.umlv.smalljs.ast.Expr.FieldAccess;
 import fr.umlv.smalljs.ast.Expr.FieldAssignment;
 import fr.umlv.smalljs.ast.Expr.Fun;
 import fr.umlv.smalljs.ast.Expr.Identifier;
 import fr.umlv.smalljs.ast.Expr.If;
 import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
 import fr.umlv.smalljs.ast.Expr.MethodCall;
 import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
 import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.Statement;
 import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
 
 public final class ByteCodeRewriter {
+  // options of the compile pipeline,
+  // debug verifies the generated bytecode and prints it on System.err,
+  // dumpDirectory if not null is a directory where the generated classes are written,
+  // cacheDirectory if not null is a directory used to store the generated classes between runs (see CodeCache)
+  record Options(boolean debug, Path dumpDirectory, Path cacheDirectory) {
+    // configured with -Dsmalljs.debug=true, -Dsmalljs.dump=directory and -Dsmalljs.cache=directory,
+    // no verification, no dump and no cache by default
+    static final Options DEFAULT = new Options(Boolean.getBoolean("smalljs.debug"),
+        Optional.ofNullable(System.getProperty("smalljs.dump")).map(Path::of).orElse(null),
+        Optional.ofNullable(System.getProperty("smalljs.cache")).map(Path::of).orElse(null));
+  }
+
+  private static final AtomicInteger DUMP_COUNTER = new AtomicInteger();
+
+  // compile the function and all the functions it contains as static methods of one hidden class,
+  // the global environment is the class data of that class
   static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global) {
+    return createFunction(name, parameters, body, global, null, Options.DEFAULT);
+  }
+
+  static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global, Options options) {
+    return createFunction(name, parameters, body, global, null, options);
+  }
+
+  // compile a function already registered in the global environment as the function object self
+  // (see TieredInterpreter), a tail call to self is a loop
+  static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global, JSObject self) {
+    return createFunction(name, parameters, body, global, self, Options.DEFAULT);
+  }
+
+  // the class data is the global environment and self if not null,
+  // the compiled function is toplevel only if there is a self
+  private static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global,
+                                         JSObject self, Options options) {
+    var fun = new Fun(name, parameters, self != null, body, body.lineNumber());
+    var instrs = options.cacheDirectory() == null ?
+        generate(fun) :
+        new CodeCache(options.cacheDirectory()).computeIfAbsent(fun, () -> generate(fun));
+    if (options.debug()) {
+      verifyAndPrint(instrs);
+    }
+    if (options.dumpDirectory() != null) {
+      dump(options.dumpDirectory(), name, instrs);
+    }
+
+    var methodName = methodName(fun, 0);
+    var methodType = genericMethodType(1 + parameters.size());
+    var specializedType = TypeInference.definesAnOperator(fun) ? null : specializedType(parameters, body);
+    MethodHandle mh, specializedMh;
+    try {
+      var classData = self == null ? List.of(global) : List.of(global, self);
+      var lookup = MethodHandles.lookup().defineHiddenClassWithClassData(instrs, classData, true);
+      var type = lookup.lookupClass();
+      mh = lookup.findStatic(type, methodName, methodType);
+      specializedMh = specializedType == null ? null : lookup.findStatic(type, methodName + "$int", specializedType);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+    return RT.newFunction(name, mh, specializedMh);
+  }
+
+  private static byte[] generate(Fun fun) {
+    var cv = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+    cv.visit(V21, ACC_PUBLIC | ACC_SUPER, SCRIPT, null, "java/lang/Object", null);
+    cv.visitSource("script", null);
+
+    // visiting a function registers the functions it contains in the dictionary
+    var dictionary = new FunDictionary(!TypeInference.definesAnOperator(fun));
+    dictionary.register(fun);
+    for (var funId = 0; funId < dictionary.size(); funId++) {
+      visitFunction(dictionary.get(funId), funId, cv, dictionary);
+    }
+    cv.visitEnd();
+    return cv.toByteArray();
+  }
+
+  private static String methodName(Fun fun, int funId) {
+    return fun.name() + "$" + funId;
+  }
+
+  // if some parameters are always used as ints, returns the type of a method specialized with those parameters
+  // unboxed, the generic method calls it if the arguments are ints, and call sites with int arguments
+  // can call it directly, returns null otherwise
+  private static MethodType specializedType(List<String> parameters, Block body) {
+    var intParameters = TypeInference.intParameters(parameters, body);
+    if (intParameters.isEmpty()) {
+      return null;
+    }
+    var specializedType = genericMethodType(1 + parameters.size());
+    for (var i = 0; i < parameters.size(); i++) {
+      if (intParameters.contains(parameters.get(i))) {
+        specializedType = specializedType.changeParameterType(1 + i, int.class);
+      }
+    }
+    return specializedType;
+  }
+
+  private static void visitFunction(Fun fun, int funId, ClassWriter cv, FunDictionary dictionary) {
+    var parameters = fun.parameters();
+    var body = fun.body();
     var env = JSObject.newEnv(null);
 
     env.register("this", 0);
@@ -51,52 +180,127 @@ public final class ByteCodeRewriter {
     }
     var parameterCount = env.length();
     visitVariable(body, env);
+    // the fields of the object literals that do not escape are stored in local variables named object.field,
+    // and the object is marked as .object (a '.' is not allowed in an identifier)
+    var objectMap = EscapeAnalysis.scalarReplaceableObjects(parameters, body);
+    objectMap.forEach((objectName, fieldNames) -> {
+      for (var fieldName : fieldNames) {
+        env.register(objectName + "." + fieldName, env.length());
+      }
+    });
     var localVariableCount = env.length();
+    for (var objectName : objectMap.keySet()) {
+      env.register("." + objectName, true);
+    }
 
-    var cv = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-    cv.visit(V21, ACC_PUBLIC | ACC_SUPER, "script", null, "java/lang/Object", null);
-    cv.visitSource("script", null);
+    var methodName = methodName(fun, funId);
+    var specializedType = dictionary.intTyping() ? specializedType(parameters, body) : null;
+    if (specializedType != null) {
+      var intParameters = TypeInference.intParameters(parameters, body);
+      var intVariables = TypeInference.intVariables(intParameters, body);
+      var mv = cv.visitMethod(ACC_PUBLIC | ACC_STATIC, methodName + "$int", specializedType.toMethodDescriptorString(), null, null);
+      mv.visitCode();
+      visitMethodBody(fun, funId, env, parameterCount, localVariableCount, intVariables, mv, dictionary);
+    }
 
-    var methodType = genericMethodType(1 + parameters.size());
-    var desc = methodType.toMethodDescriptorString();
-    var mv = cv.visitMethod(ACC_PUBLIC | ACC_STATIC, name, desc, null, null);
+    var desc = genericMethodType(1 + parameters.size()).toMethodDescriptorString();
+    var mv = cv.visitMethod(ACC_PUBLIC | ACC_STATIC, methodName, desc, null, null);
     mv.visitCode();
+    if (specializedType != null) {
+      visitSpecializedCall(methodName, specializedType, mv);
+    }
+    var intVariables = dictionary.intTyping() ? TypeInference.intVariables(Set.of(), body) : Set.<String>of();
+    visitMethodBody(fun, funId, env, parameterCount, localVariableCount, intVariables, mv, dictionary);
+  }
+
+  // a constant that creates the function object from the method handles of its methods
+  private static ConstantDynamic funConstant(Fun fun, int funId, FunDictionary dictionary) {
+    var methodName = methodName(fun, funId);
+    var desc = genericMethodType(1 + fun.parameters().size()).toMethodDescriptorString();
+    var handle = new Handle(H_INVOKESTATIC, SCRIPT, methodName, desc, false);
+    var specializedType = dictionary.intTyping() ? specializedType(fun.parameters(), fun.body()) : null;
+    if (specializedType == null) {
+      return new ConstantDynamic(fun.name(), "Ljava/lang/Object;", BSM_FUN, handle);
+    }
+    var specializedHandle = new Handle(H_INVOKESTATIC, SCRIPT, methodName + "$int", specializedType.toMethodDescriptorString(), false);
+    return new ConstantDynamic(fun.name(), "Ljava/lang/Object;", BSM_FUN, handle, specializedHandle);
+  }
 
-    //initialize local variables to undefined by default
+  // if all the arguments corresponding to the int parameters are Integers,
+  // unbox them and call the specialized method
+  private static void visitSpecializedCall(String methodName, MethodType specializedType, MethodVisitor mv) {
+    var genericLabel = new Label();
+    for (var i = 1; i < specializedType.parameterCount(); i++) {
+      if (specializedType.parameterType(i) == int.class) {
+        mv.visitVarInsn(ALOAD, i);
+        mv.visitTypeInsn(INSTANCEOF, "java/lang/Integer");
+        mv.visitJumpInsn(IFEQ, genericLabel);
+      }
+    }
+    for (var i = 0; i < specializedType.parameterCount(); i++) {
+      mv.visitVarInsn(ALOAD, i);
+      if (specializedType.parameterType(i) == int.class) {
+        mv.visitTypeInsn(CHECKCAST, "java/lang/Integer");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Integer", "intValue", "()I", false);
+      }
+    }
+    mv.visitMethodInsn(INVOKESTATIC, SCRIPT, methodName + "$int", specializedType.toMethodDescriptorString(), false);
+    mv.visitInsn(ARETURN);
+    mv.visitLabel(genericLabel);
+  }
+
+  // a toplevel function being compiled, a tail call to itself jumps to the start label
+  // instead of calling the function, it is registered in the environment as %self
+  // (a '%' is not allowed in an identifier), the constant is the function object
+  // compared with the callee
+  private record SelfCall(String name, List<String> parameters, ConstantDynamic constant, Label start) {}
+
+  private static void visitMethodBody(Fun fun, int funId, JSObject env, int parameterCount, int localVariableCount,
+                                      Set<String> intVariables, MethodVisitor mv, FunDictionary dictionary) {
+    var body = fun.body();
+    if (fun.toplevel()) {
+      var start = new Label();
+      mv.visitLabel(start);
+      // the root function is toplevel only if its function object is in the class data
+      var constant = funId == 0 ? SELF : funConstant(fun, funId, dictionary);
+      env.register("%self", new SelfCall(fun.name(), fun.parameters(), constant, start));
+    }
+    //initialize local variables to undefined by default (or 0 for int variables that are initialized before use)
     for(var i = parameterCount; i < localVariableCount; i++) {
       mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
       mv.visitVarInsn(ASTORE, i);
     }
+    for (var intVariable : intVariables) {
+      var slot = (int) env.lookupOrDefault(intVariable, null);
+      if (slot >= parameterCount) {
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, slot);
+      }
+    }
 
-    var dictionary = new FunDictionary();
-    visit(body, env, mv, dictionary);
+    visit(body, env, intVariables, mv, dictionary);
 
     mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
     mv.visitInsn(ARETURN);
     mv.visitMaxs(0, 0);
     mv.visitEnd();
-
-    var instrs = cv.toByteArray();
-    dumpBytecode(instrs);
-
-    var functionClassLoader = new FunClassLoader(dictionary, global);
-    var type = functionClassLoader.createClass("script", instrs);
-
-    MethodHandle mh;
-    try {
-        mh = MethodHandles.lookup().findStatic(type, name, methodType);
-    } catch (NoSuchMethodException | IllegalAccessException e) {
-        throw new AssertionError(e);
-    }
-
-    return JSObject.newFunction(name, mh);
   }
 
-  private static void dumpBytecode(byte[] array) {
+  private static void verifyAndPrint(byte[] array) {
     var reader = new ClassReader(array);
     CheckClassAdapter.verify(reader, true, new PrintWriter(System.err, false, UTF_8));
   }
 
+  // the class is hidden so it has no name, use the function name and a counter instead
+  private static void dump(Path directory, String name, byte[] array) {
+    try {
+      Files.createDirectories(directory);
+      Files.write(directory.resolve(name + "-" + DUMP_COUNTER.incrementAndGet() + ".class"), array);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   private static void visitVariable(Expr expression, JSObject env) {
     switch (expression) {
       case Block(List<Expr> exprs, _) -> {
@@ -113,8 +317,12 @@ public final class ByteCodeRewriter {
         visitVariable(trueBlock, env);
         visitVariable(falseBlock, env);
       }
+      case Loop(_, Block body, Block update, _, _) -> {
+        visitVariable(body, env);
+        visitVariable(update, env);
+      }
       case Literal _, Call _, Identifier _, Fun _, Return _, ObjectLiteral _, FieldAccess _,
-           FieldAssignment _, MethodCall _ -> {
+           FieldAssignment _, MethodCall _, Break _, Continue _ -> {
         // do nothing
       }
     };
@@ -128,103 +336,354 @@ public final class ByteCodeRewriter {
 
   private static final String JSOBJECT = JSObject.class.getName().replace('.', '/');
   private static final String RT_NAME = RT.class.getName().replace('.', '/');
+  // a hidden class must be in the same package as the lookup class
+  private static final String SCRIPT = ByteCodeRewriter.class.getPackageName().replace('.', '/') + "/script";
+  // the global environment and the function object of a toplevel root function (see createFunction),
+  // loaded from the class data of the script class
+  private static final Handle CLASS_DATA_AT = new Handle(H_INVOKESTATIC, "java/lang/invoke/MethodHandles", "classDataAt",
+      MethodType.methodType(Object.class, Lookup.class, String.class, Class.class, int.class).toMethodDescriptorString(), false);
+  private static final ConstantDynamic GLOBAL_ENV = new ConstantDynamic("_", "L" + JSOBJECT + ";", CLASS_DATA_AT, 0);
+  private static final ConstantDynamic SELF = new ConstantDynamic("_", "Ljava/lang/Object;", CLASS_DATA_AT, 1);
   private static final Handle BSM_UNDEFINED = bsm("bsm_undefined", Object.class, Lookup.class, String.class, Class.class);
+  private static final Handle BSM_LAYOUT = bsm("bsm_layout", Object.class, Lookup.class, String.class, Class.class, String[].class);
   private static final Handle BSM_CONST = bsm("bsm_const", Object.class, Lookup.class, String.class, Class.class, int.class);
   private static final Handle BSM_FUNCALL = bsm("bsm_funcall", CallSite.class, Lookup.class, String.class, MethodType.class);
-  private static final Handle BSM_LOOKUP = bsm("bsm_lookup", CallSite.class, Lookup.class, String.class, MethodType.class, String.class);
-  private static final Handle BSM_FUN = bsm("bsm_fun", Object.class, Lookup.class, String.class, Class.class, int.class);
-  private static final Handle BSM_REGISTER = bsm("bsm_register", CallSite.class, Lookup.class, String.class, MethodType.class, String.class);
+  private static final Handle BSM_LOOKUP = bsm("bsm_lookup", CallSite.class, Lookup.class, String.class, MethodType.class, String.class, JSObject.class);
+  private static final Handle BSM_FUN = bsm("bsm_fun", Object.class, Lookup.class, String.class, Class.class, MethodHandle.class, MethodHandle[].class);
+  private static final Handle BSM_REGISTER = bsm("bsm_register", CallSite.class, Lookup.class, String.class, MethodType.class, String.class, JSObject.class);
   private static final Handle BSM_TRUTH = bsm("bsm_truth", CallSite.class, Lookup.class, String.class, MethodType.class);
   private static final Handle BSM_GET = bsm("bsm_get", CallSite.class, Lookup.class, String.class, MethodType.class, String.class);
   private static final Handle BSM_SET = bsm("bsm_set", CallSite.class, Lookup.class, String.class, MethodType.class, String.class);
   private static final Handle BSM_METHODCALL = bsm("bsm_methodcall", CallSite.class, Lookup.class, String.class, MethodType.class);
+  private static final Handle BSM_OPERATOR = bsm("bsm_operator", CallSite.class, Lookup.class, String.class, MethodType.class, String.class, JSObject.class);
+
+  // a tail call of the function to itself with the right number of arguments, if the function
+  // is specialized, the arguments of the int parameters must be ints
+  private static boolean isSelfTailCall(Return ret, JSObject env, Set<String> intVariables) {
+    if (!ret.tailCall()
+        || !(env.lookupOrDefault("%self", null) instanceof SelfCall selfCall)
+        || !(((Call) ret.expr()).qualifier() instanceof Identifier(String name, _))
+        || !name.equals(selfCall.name)
+        || env.lookupOrDefault(name, null) != null) {  // a local variable with the same name
+      return false;
+    }
+    var parameters = selfCall.parameters;
+    var args = ((Call) ret.expr()).args();
+    if (args.size() != parameters.size() || Set.copyOf(parameters).size() != parameters.size()) {
+      return false;
+    }
+    for (var i = 0; i < args.size(); i++) {
+      if (intVariables.contains(parameters.get(i)) && !TypeInference.isInt(args.get(i), intVariables)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the labels of a loop, registered in the environment as %loop,
+  // NO_LOOP is registered outside a loop once a loop has been visited
+  private record LoopLabels(Label continueLabel, Label breakLabel) {}
+
+  private static final LoopLabels NO_LOOP = new LoopLabels(null, null);
+
+  // the labels of the innermost loop, a break or a continue outside a loop is rejected by the parser
+  private static LoopLabels loopLabels(JSObject env) {
+    if (!(env.lookupOrDefault("%loop", NO_LOOP) instanceof LoopLabels labels) || labels == NO_LOOP) {
+      throw new AssertionError("break or continue outside a loop");
+    }
+    return labels;
+  }
+
+  // visit a condition, a boolean is left on the stack
+  private static void visitCondition(Expr condition, JSObject env, Set<String> intVariables, MethodVisitor mv, FunDictionary dictionary) {
+    if (dictionary.intTyping() && condition instanceof Call call && TypeInference.isIntComparison(call, intVariables)) {
+      // a comparison of ints, no need to box the result
+      visitInt(call.args().get(0), env, intVariables, mv, dictionary);
+      visitInt(call.args().get(1), env, intVariables, mv, dictionary);
+      visitOperator(((Identifier) call.qualifier()).name(), boolean.class, mv);
+    } else {
+      // visit the condition
+      visit(condition, env, intVariables, mv, dictionary);
+      // generate an invokedynamic to transform an Object to a boolean using BSM_TRUTH
+      mv.visitInvokeDynamicInsn("truth", "(Ljava/lang/Object;)Z", BSM_TRUTH);
+    }
+  }
+
+  // load "this" and the arguments then call the function which is on the stack
+  private static void visitCallArguments(List<Expr> args, JSObject env, Set<String> intVariables, MethodVisitor mv, FunDictionary dictionary) {
+    // load "this"
+    mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
+    // for each argument, visit it, ints are passed unboxed
+    var type = genericMethodType(args.size() + 2);
+    for(var i = 0; i < args.size(); i++) {
+      var arg = args.get(i);
+      if (dictionary.intTyping() && TypeInference.isInt(arg, intVariables)) {
+        visitInt(arg, env, intVariables, mv, dictionary);
+        type = type.changeParameterType(2 + i, int.class);
+      } else {
+        visit(arg, env, intVariables, mv, dictionary);
+      }
+    }
+    // generate an invokedynamic
+    mv.visitInvokeDynamicInsn("funcall", type.toMethodDescriptorString(), BSM_FUNCALL);
+  }
+
+  private static void visitOperator(String name, Class<?> returnType, MethodVisitor mv) {
+    var desc = MethodType.methodType(returnType, int.class, int.class).toMethodDescriptorString();
+    mv.visitInvokeDynamicInsn("operator", desc, BSM_OPERATOR, name, GLOBAL_ENV);
+  }
+
+  // visit an expression that is typed as an int by the type inference, an int is left on the stack
+  private static void visitInt(Expr expression, JSObject env, Set<String> intVariables, MethodVisitor mv, FunDictionary dictionary) {
+    switch (expression) {
+      case Literal(Integer integer, int lineNumber) -> mv.visitLdcInsn(integer);
+      case Identifier(String name, int lineNumber) -> mv.visitVarInsn(ILOAD, (int) env.lookupOrDefault(name, null));
+      case Call(Identifier(String name, _), List<Expr> args, int lineNumber) -> {
+        visitInt(args.get(0), env, intVariables, mv, dictionary);
+        visitInt(args.get(1), env, intVariables, mv, dictionary);
+        visitOperator(name, int.class, mv);
+      }
+      default -> throw new AssertionError("not an int expression " + expression);
+    }
+  }
 
-  private static void visit(Expr expression, JSObject env, MethodVisitor mv, FunDictionary dictionary) {
+  private static void visit(Expr expression, JSObject env, Set<String> intVariables, MethodVisitor mv, FunDictionary dictionary) {
     switch(expression) {
       case Block(List<Expr> exprs, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Block");
         // for each expression
-        // generate line numbers
-        // visit it
-        // if not a statement, generate a POP
+        for(var expr : exprs) {
+          // generate line numbers
+          var label = new Label();
+          mv.visitLabel(label);
+          mv.visitLineNumber(expr.lineNumber(), label);
+          // visit it
+          visit(expr, env, intVariables, mv, dictionary);
+          // if not a statement, generate a POP
+          if (!(expr instanceof Statement)) {
+            mv.visitInsn(POP);
+          }
+        }
       }
       case Literal(Integer integer, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Literal Integer");
         // use visitLDCInstr with a ConstantDynamic because the JVM does not support Integer (but supports int)
+        mv.visitLdcInsn(new ConstantDynamic("const", "Ljava/lang/Object;", BSM_CONST, integer));
       }
       case Literal(String s, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Literal String");
         // use visitLDCInstr because the JVM natively supports strings
+        mv.visitLdcInsn(s);
       }
       case Literal _ -> {  // should be UNDEFINED
-        throw new UnsupportedOperationException("TODO Literal UNDEFINED");
         // use visitLDCInstr with a ConstantDynamic because the JVM does not support UNDEFINED natively
+        mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
+      }
+      case Call call when dictionary.intTyping() && TypeInference.isIntOperation(call, intVariables) -> {
+        // an operation on ints, box the result
+        visitInt(call, env, intVariables, mv, dictionary);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+      }
+      case Call call when dictionary.intTyping() && TypeInference.isIntComparison(call, intVariables) -> {
+        // a comparison of ints, box the result
+        visitInt(call.args().get(0), env, intVariables, mv, dictionary);
+        visitInt(call.args().get(1), env, intVariables, mv, dictionary);
+        visitOperator(((Identifier) call.qualifier()).name(), boolean.class, mv);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+      }
+      case Call(Identifier(String name, _), List<Expr> args, int lineNumber)
+          when args.size() == 2 && RT.isOperator(name) && env.lookupOrDefault(name, null) == null -> {
+        // a builtin operator, visit the operands
+        visit(args.get(0), env, intVariables, mv, dictionary);
+        visit(args.get(1), env, intVariables, mv, dictionary);
+        // generate an invokedynamic that specializes the operator on the operand types
+        mv.visitInvokeDynamicInsn("operator", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", BSM_OPERATOR, name, GLOBAL_ENV);
       }
       case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Call");
         // visit the qualifier
-        // load "this"
-        // for each argument, visit it
-        // generate an invokedynamic
+        visit(qualifier, env, intVariables, mv, dictionary);
+        visitCallArguments(args, env, intVariables, mv, dictionary);
+      }
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) when intVariables.contains(name) -> {
+        // an int variable, store the int unboxed
+        visitInt(expr, env, intVariables, mv, dictionary);
+        mv.visitVarInsn(ISTORE, (int) env.lookupOrDefault(name, null));
+      }
+      case VarAssignment(String name, ObjectLiteral(Map<String, Expr> initMap, _), _, int lineNumber)
+          when env.lookupOrDefault("." + name, null) != null -> {
+        // a scalar replaced object, store the values in the local variables of the fields
+        initMap.forEach((key, expr) -> {
+          visit(expr, env, intVariables, mv, dictionary);
+          mv.visitVarInsn(ASTORE, (int) env.lookupOrDefault(name + "." + key, null));
+        });
       }
       case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO VarAssignment");
         // visit the expression
+        visit(expr, env, intVariables, mv, dictionary);
         // lookup that name in the environment
+        var slot = env.lookupOrDefault(name, null);
         // if it does not exist throw a Failure
+        if (slot == null) {
+          throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
+        }
         // otherwise STORE the top of the stack at the local variable slot
+        mv.visitVarInsn(ASTORE, (int) slot);
       }
       case Identifier(String name, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Identifier");
         // lookup to find if it's a local var access or a lookup access
-        // if it does not exist
-        //  generate an invokedynamic doing a lookup
-        // otherwise
-        //  load the local variable at the slot
+        var slot = env.lookupOrDefault(name, null);
+        if (slot == null) {
+          // generate an invokedynamic doing a lookup
+          mv.visitInvokeDynamicInsn("lookup", "()Ljava/lang/Object;", BSM_LOOKUP, name, GLOBAL_ENV);
+        } else if (intVariables.contains(name)) {
+          // load the int local variable at the slot and box it
+          mv.visitVarInsn(ILOAD, (int) slot);
+          mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+        } else {
+          // load the local variable at the slot
+          mv.visitVarInsn(ALOAD, (int) slot);
+        }
       }
       case Fun fun -> {
         var name = fun.name();
         var toplevel = fun.toplevel();
-        throw new UnsupportedOperationException("TODO Fun");
-        // register the fun inside the fun directory and get the corresponding id
-        // emit a LDC to load the function corresponding to the id at runtime
+        // register the fun inside the fun dictionary so its methods are generated in the same class
+        var funId = dictionary.register(fun);
+        // emit a LDC to create the function from its methods at runtime
+        mv.visitLdcInsn(funConstant(fun, funId, dictionary));
         // generate an invokedynamic doing a register with the function name if it's a toplevel
+        if (toplevel) {
+          mv.visitInsn(DUP);
+          mv.visitInvokeDynamicInsn("register", "(Ljava/lang/Object;)V", BSM_REGISTER, name, GLOBAL_ENV);
+        }
+      }
+      case Return ret when isSelfTailCall(ret, env, intVariables) -> {
+        var selfCall = (SelfCall) env.lookupOrDefault("%self", null);
+        var call = (Call) ret.expr();
+        var args = call.args();
+        // the global may have been redefined, check that it is still the current function
+        var callLabel = new Label();
+        visit(call.qualifier(), env, intVariables, mv, dictionary);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(selfCall.constant);
+        mv.visitJumpInsn(IF_ACMPNE, callLabel);
+        mv.visitInsn(POP);
+        // evaluate all the arguments before storing them in the parameters, then loop
+        for (var i = 0; i < args.size(); i++) {
+          if (intVariables.contains(selfCall.parameters.get(i))) {
+            visitInt(args.get(i), env, intVariables, mv, dictionary);
+          } else {
+            visit(args.get(i), env, intVariables, mv, dictionary);
+          }
+        }
+        for (var i = args.size(); --i >= 0;) {
+          mv.visitVarInsn(intVariables.contains(selfCall.parameters.get(i)) ? ISTORE : ASTORE, 1 + i);
+        }
+        mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
+        mv.visitVarInsn(ASTORE, 0);
+        mv.visitJumpInsn(GOTO, selfCall.start);
+        // otherwise, a call
+        mv.visitLabel(callLabel);
+        visitCallArguments(args, env, intVariables, mv, dictionary);
+        mv.visitInsn(ARETURN);
       }
       case Return(Expr expr, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO Return");
         // visit the return expression
+        visit(expr, env, intVariables, mv, dictionary);
         // generate the bytecode
+        mv.visitInsn(ARETURN);
       }
       case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO If");
-        // visit the condition
-        // generate an invokedynamic to transform an Object to a boolean using BSM_TRUTH
+        visitCondition(condition, env, intVariables, mv, dictionary);
+        var falseLabel = new Label();
+        var endLabel = new Label();
+        mv.visitJumpInsn(IFEQ, falseLabel);
         // visit the true block
+        visit(trueBlock, env, intVariables, mv, dictionary);
+        mv.visitJumpInsn(GOTO, endLabel);
         // visit the false block
+        mv.visitLabel(falseLabel);
+        visit(falseBlock, env, intVariables, mv, dictionary);
+        mv.visitLabel(endLabel);
       }
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) -> {
+        // the condition is tested at the end, so an iteration has only one jump, a backward jump
+        // that lets the JIT compile the loop (on stack replacement)
+        var startLabel = new Label();
+        var continueLabel = new Label();
+        var conditionLabel = new Label();
+        var endLabel = new Label();
+        if (testFirst) {
+          mv.visitJumpInsn(GOTO, conditionLabel);
+        }
+        mv.visitLabel(startLabel);
+        // the labels of the innermost loop, the labels of the enclosing loop (or NO_LOOP) are restored
+        // after the body, so a break or a continue never jumps to the labels of a loop that ended
+        var enclosingLoop = env.lookupOrDefault("%loop", NO_LOOP);
+        env.register("%loop", new LoopLabels(continueLabel, endLabel));
+        visit(body, env, intVariables, mv, dictionary);
+        env.register("%loop", enclosingLoop);
+        mv.visitLabel(continueLabel);
+        visit(update, env, intVariables, mv, dictionary);
+        mv.visitLabel(conditionLabel);
+        visitCondition(condition, env, intVariables, mv, dictionary);
+        mv.visitJumpInsn(IFNE, startLabel);
+        mv.visitLabel(endLabel);
+      }
+      case Break _ -> mv.visitJumpInsn(GOTO, loopLabels(env).breakLabel);
+      case Continue _ -> mv.visitJumpInsn(GOTO, loopLabels(env).continueLabel);
       case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO ObjectLiteral");
+        // no proto
+        mv.visitInsn(ACONST_NULL);
+        // the layout is computed once by a constant dynamic
+        mv.visitLdcInsn(new ConstantDynamic("layout", "Ljava/lang/Object;", BSM_LAYOUT, initMap.keySet().toArray()));
+        // store the value of each initialization expression in an array
+        mv.visitLdcInsn(initMap.size());
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        var i = 0;
+        for (var expr : initMap.values()) {
+          mv.visitInsn(DUP);
+          mv.visitLdcInsn(i++);
+          visit(expr, env, intVariables, mv, dictionary);
+          mv.visitInsn(AASTORE);
+        }
         // call newObject with an INVOKESTATIC
-        // for each initialization expression
-          // generate a string with the key
-          // call register on the JSObject
+        mv.visitMethodInsn(INVOKESTATIC, JSOBJECT, "newObject",
+            "(L" + JSOBJECT + ";Ljava/lang/Object;[Ljava/lang/Object;)L" + JSOBJECT + ";", false);
+      }
+      case FieldAccess(Identifier(String objectName, _), String name, int lineNumber)
+          when env.lookupOrDefault("." + objectName, null) != null -> {
+        // a field of a scalar replaced object, load the local variable
+        mv.visitVarInsn(ALOAD, (int) env.lookupOrDefault(objectName + "." + name, null));
       }
       case FieldAccess(Expr receiver, String name, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO FieldAccess");
         // visit the receiver
+        visit(receiver, env, intVariables, mv, dictionary);
         // generate an invokedynamic that goes a get through BSM_GET
+        mv.visitInvokeDynamicInsn("get", "(Ljava/lang/Object;)Ljava/lang/Object;", BSM_GET, name);
+      }
+      case FieldAssignment(Identifier(String objectName, _), String name, Expr expr, int lineNumber)
+          when env.lookupOrDefault("." + objectName, null) != null -> {
+        // a field of a scalar replaced object, store the local variable
+        visit(expr, env, intVariables, mv, dictionary);
+        mv.visitVarInsn(ASTORE, (int) env.lookupOrDefault(objectName + "." + name, null));
       }
       case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO FieldAssignment");
         // visit the receiver
+        visit(receiver, env, intVariables, mv, dictionary);
         // visit the expression
+        visit(expr, env, intVariables, mv, dictionary);
+        // generate an invokedynamic that goes a set through BSM_SET
+        mv.visitInvokeDynamicInsn("set", "(Ljava/lang/Object;Ljava/lang/Object;)V", BSM_SET, name);
       }
       case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO MethodCall");
         // visit the receiver
+        visit(receiver, env, intVariables, mv, dictionary);
         // for each argument
+        for(var arg : args) {
           // visit the argument
+          visit(arg, env, intVariables, mv, dictionary);
+        }
         // generate an invokedynamic that call BSM_METHODCALL
+        var desc = genericMethodType(args.size() + 1).toMethodDescriptorString();
+        mv.visitInvokeDynamicInsn(name, desc, BSM_METHODCALL);
       }
     }
   }
@@ -0,0 +1,222 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.rt.JSObject;
+
+// an on-disk cache of the classes generated by the ByteCodeRewriter,
+// a class is stored in a file named by a hash of the compiler version, of the class files of the compiler
+// and of the Expr tree of the function, so a change of the function or of the compiler invalidates the entry
+final class CodeCache {
+  // must be incremented each time the ByteCodeRewriter or RT changes the generated code
+  static final int COMPILER_VERSION = 7;
+
+  // the classes that decide the generated code or that it links against (JSObject is called directly),
+  // a rebuilt compiler invalidates the entries even if COMPILER_VERSION is not incremented
+  private static final byte[] COMPILER_HASH = classHash(
+      List.of(ByteCodeRewriter.class, EscapeAnalysis.class, TypeInference.class, FunDictionary.class, RT.class,
+          JSObject.class));
+
+  private final Path directory;
+
+  CodeCache(Path directory) {
+    this.directory = directory;
+  }
+
+  byte[] computeIfAbsent(Fun fun, Supplier<byte[]> generator) {
+    var path = directory.resolve(key(COMPILER_VERSION, fun) + ".class");
+    try {
+      return Files.readAllBytes(path);
+    } catch (NoSuchFileException e) {
+      // not in the cache
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    var instrs = generator.get();
+    try {
+      // write in a temporary file and rename it, so another process never sees a partial file
+      Files.createDirectories(directory);
+      var temporary = Files.createTempFile(directory, "smalljs", ".tmp");
+      Files.write(temporary, instrs);
+      Files.move(temporary, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return instrs;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  static String key(int compilerVersion, Fun fun) {
+    var digest = newDigest();
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(compilerVersion).flip());
+    digest.update(COMPILER_HASH);
+    hash(fun, digest);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  // a hash of the class files of the classes and of their member classes
+  static byte[] classHash(List<Class<?>> classes) {
+    var digest = newDigest();
+    for (var type : classes) {
+      hash(type, digest);
+    }
+    return digest.digest();
+  }
+
+  private static void hash(Class<?> type, MessageDigest digest) {
+    var name = type.getName();
+    hash(name, digest);
+    // the class file is next to the class, a member class is named Outer$Inner
+    var fileName = name.substring(name.lastIndexOf('.') + 1) + ".class";
+    try (var input = type.getResourceAsStream(fileName)) {
+      if (input == null) {
+        throw new AssertionError("no class file for " + name);
+      }
+      var bytes = input.readAllBytes();
+      digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).flip());
+      digest.update(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    for (var memberType : type.getDeclaredClasses()) {
+      hash(memberType, digest);
+    }
+  }
+
+  // each node is written with a tag, strings and lists are prefixed by their size,
+  // so two different trees never have the same encoding
+  private static void hash(Expr expression, MessageDigest digest) {
+    switch (expression) {
+      case Block(List<Expr> exprs, int lineNumber) -> {
+        hash('B', lineNumber, digest);
+        hash(exprs, digest);
+      }
+      case Literal(Object value, int lineNumber) -> {
+        hash('L', lineNumber, digest);
+        hash(value.getClass().getName(), digest);
+        hash(value.toString(), digest);
+      }
+      case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
+        hash('C', lineNumber, digest);
+        hash(qualifier, digest);
+        hash(args, digest);
+      }
+      case Identifier(String name, int lineNumber) -> {
+        hash('N', lineNumber, digest);
+        hash(name, digest);
+      }
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) -> {
+        hash(declaration ? 'V' : 'A', lineNumber, digest);
+        hash(name, digest);
+        hash(expr, digest);
+      }
+      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) -> {
+        hash(toplevel ? 'F' : 'G', lineNumber, digest);
+        hash(name, digest);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(parameters.size()).flip());
+        for (var parameter : parameters) {
+          hash(parameter, digest);
+        }
+        hash(body, digest);
+      }
+      case Return(Expr expr, int lineNumber) -> {
+        hash('R', lineNumber, digest);
+        hash(expr, digest);
+      }
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
+        hash('I', lineNumber, digest);
+        hash(condition, digest);
+        hash(trueBlock, digest);
+        hash(falseBlock, digest);
+      }
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) -> {
+        hash(testFirst ? 'W' : 'D', lineNumber, digest);
+        hash(condition, digest);
+        hash(body, digest);
+        hash(update, digest);
+      }
+      case Break(int lineNumber) -> hash('K', lineNumber, digest);
+      case Continue(int lineNumber) -> hash('U', lineNumber, digest);
+      case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
+        hash('O', lineNumber, digest);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(initMap.size()).flip());
+        initMap.forEach((key, expr) -> {
+          hash(key, digest);
+          hash(expr, digest);
+        });
+      }
+      case FieldAccess(Expr receiver, String name, int lineNumber) -> {
+        hash('.', lineNumber, digest);
+        hash(receiver, digest);
+        hash(name, digest);
+      }
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
+        hash('=', lineNumber, digest);
+        hash(receiver, digest);
+        hash(name, digest);
+        hash(expr, digest);
+      }
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
+        hash('M', lineNumber, digest);
+        hash(receiver, digest);
+        hash(name, digest);
+        hash(args, digest);
+      }
+    }
+  }
+
+  private static void hash(char tag, int lineNumber, MessageDigest digest) {
+    digest.update(ByteBuffer.allocate(Character.BYTES + Integer.BYTES).putChar(tag).putInt(lineNumber).flip());
+  }
+
+  private static void hash(List<Expr> exprs, MessageDigest digest) {
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(exprs.size()).flip());
+    for (var expr : exprs) {
+      hash(expr, digest);
+    }
+  }
+
+  private static void hash(String text, MessageDigest digest) {
+    var bytes = text.getBytes(UTF_8);
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).flip());
+    digest.update(bytes);
+  }
+}
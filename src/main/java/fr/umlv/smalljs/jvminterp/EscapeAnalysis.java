@@ -0,0 +1,127 @@
+package fr.umlv.smalljs.jvminterp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+
+// finds the local variables initialized by an object literal that does not escape the function,
+// so the object is not allocated and its fields are stored in local variables (scalar replacement).
+// A variable is only used as receiver of a field access or a field assignment, so the object
+// is never returned, passed as argument, used as this of a method call or aliased.
+final class EscapeAnalysis {
+  private static final class Info {
+    private final HashMap<String, Integer> assignmentCountMap = new HashMap<>();
+    private final HashMap<String, Integer> firstUseMap = new HashMap<>();
+    private final HashMap<String, LinkedHashSet<String>> fieldMap = new HashMap<>();
+    private final HashSet<String> escapeSet = new HashSet<>();
+
+    private void use(String name, String fieldName, int statementIndex) {
+      firstUseMap.putIfAbsent(name, statementIndex);
+      fieldMap.computeIfAbsent(name, _ -> new LinkedHashSet<>()).add(fieldName);
+    }
+
+    private void visit(Expr expression, int statementIndex) {
+      switch (expression) {
+        case Block(List<Expr> exprs, _) -> {
+          for (var expr : exprs) {
+            visit(expr, statementIndex);
+          }
+        }
+        case Literal _ -> {}
+        case Identifier(String name, _) -> escapeSet.add(name);
+        case Call(Expr qualifier, List<Expr> args, _) -> {
+          visit(qualifier, statementIndex);
+          for (var arg : args) {
+            visit(arg, statementIndex);
+          }
+        }
+        case VarAssignment(String name, Expr expr, _, _) -> {
+          visit(expr, statementIndex);
+          assignmentCountMap.merge(name, 1, Integer::sum);
+        }
+        case Fun _ -> {
+          // a nested function does not see the local variables
+        }
+        case Return(Expr expr, _) -> visit(expr, statementIndex);
+        case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+          visit(condition, statementIndex);
+          visit(trueBlock, statementIndex);
+          visit(falseBlock, statementIndex);
+        }
+        case Loop(Expr condition, Block body, Block update, _, _) -> {
+          visit(condition, statementIndex);
+          visit(body, statementIndex);
+          visit(update, statementIndex);
+        }
+        case Break _, Continue _ -> {}
+        case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+          for (var expr : initMap.values()) {
+            visit(expr, statementIndex);
+          }
+        }
+        case FieldAccess(Identifier(String name, _), String fieldName, _) -> use(name, fieldName, statementIndex);
+        case FieldAccess(Expr receiver, _, _) -> visit(receiver, statementIndex);
+        case FieldAssignment(Identifier(String name, _), String fieldName, Expr expr, _) -> {
+          use(name, fieldName, statementIndex);
+          visit(expr, statementIndex);
+        }
+        case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+          visit(receiver, statementIndex);
+          visit(expr, statementIndex);
+        }
+        case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+          visit(receiver, statementIndex);
+          for (var arg : args) {
+            visit(arg, statementIndex);
+          }
+        }
+      }
+    }
+  }
+
+  // returns the variables that can be scalar replaced with, for each variable, the names of its fields,
+  // the variable must be declared once, in a statement of the function body (not in a nested block),
+  // initialized by an object literal, never assigned again and not used before that statement
+  static Map<String, Set<String>> scalarReplaceableObjects(List<String> parameters, Block body) {
+    var info = new Info();
+    var exprs = body.exprs();
+    for (var i = 0; i < exprs.size(); i++) {
+      info.visit(exprs.get(i), i);
+    }
+    var objectMap = new LinkedHashMap<String, Set<String>>();
+    for (var i = 0; i < exprs.size(); i++) {
+      if (exprs.get(i) instanceof VarAssignment(String name, ObjectLiteral(Map<String, Expr> initMap, _), boolean declaration, _)
+          && declaration
+          && !parameters.contains(name)
+          && !info.escapeSet.contains(name)
+          && info.assignmentCountMap.get(name) == 1
+          && info.firstUseMap.getOrDefault(name, Integer.MAX_VALUE) > i) {
+        var fieldNames = new LinkedHashSet<>(initMap.keySet());
+        fieldNames.addAll(info.fieldMap.getOrDefault(name, new LinkedHashSet<>()));
+        objectMap.put(name, fieldNames);
+      }
+    }
+    return objectMap;
+  }
+}
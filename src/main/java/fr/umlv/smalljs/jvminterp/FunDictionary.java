@@ -1,21 +1,38 @@
 package fr.umlv.smalljs.jvminterp;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import fr.umlv.smalljs.ast.Expr.Fun;
 
+// the functions of a compilation unit, each function is compiled as methods of the same class
 final class FunDictionary {
   private final ArrayList<Fun> dictionary = new ArrayList<>();
+  private final IdentityHashMap<Fun, Integer> idMap = new IdentityHashMap<>();  // the same Fun has the same id
+  private final boolean intTyping;
+
+  // if intTyping is false, no expression of the compilation unit is typed as an int (see TypeInference)
+  public FunDictionary(boolean intTyping) {
+    this.intTyping = intTyping;
+  }
+
+  public boolean intTyping() {
+    return intTyping;
+  }
   
   public int register(Fun fun) {
-    var id = dictionary.size();
-    dictionary.add(fun);
-    return id;
+    return idMap.computeIfAbsent(fun, _ -> {
+      var id = dictionary.size();
+      dictionary.add(fun);
+      return id;
+    });
   }
   
-  public Fun lookupAndClear(int id) {
-    var fun = dictionary.get(id);
-    dictionary.set(id, null);     // Fun will be garbage collected
-    return fun;
+  public Fun get(int id) {
+    return dictionary.get(id);
+  }
+
+  public int size() {
+    return dictionary.size();
   }
-}
\ No newline at end of file
+}
@@ -7,12 +7,12 @@ import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
 
+import fr.umlv.smalljs.ast.Optimizer;
 import fr.umlv.smalljs.ast.Script;
 import fr.umlv.smalljs.rt.JSObject;
 
 public final class JVMInterpreter {
-  @SuppressWarnings("unchecked")
-  private static JSObject createGlobalEnv(PrintStream outStream) {
+  static JSObject createGlobalEnv(PrintStream outStream) {
     var globalEnv = JSObject.newEnv(null);
     globalEnv.register("globalThis", globalEnv);
     globalEnv.register("print", JSObject.newFunction("print", (_, args) -> {
@@ -20,24 +20,28 @@ public final class JVMInterpreter {
       outStream.println(Arrays.stream(args).map(String::valueOf).collect(joining(" ")));
       return UNDEFINED;
     }));
-    globalEnv.register("+", JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]));
-    globalEnv.register("-", JSObject.newFunction("-", (_, args) -> (Integer) args[0] - (Integer) args[1]));
-    globalEnv.register("/", JSObject.newFunction("/", (_, args) -> (Integer) args[0] / (Integer) args[1]));
-    globalEnv.register("*", JSObject.newFunction("*", (_, args) -> (Integer) args[0] * (Integer) args[1]));
-    globalEnv.register("%", JSObject.newFunction("%", (_, args) -> (Integer) args[0] % (Integer) args[1]));
-    globalEnv.register("==", JSObject.newFunction("==", (_, args) -> args[0].equals(args[1])));
-    globalEnv.register("!=", JSObject.newFunction("!=", (_, args) -> !args[0].equals(args[1])));
-    globalEnv.register("<", JSObject.newFunction("<",   (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0)));
-    globalEnv.register("<=", JSObject.newFunction("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0)));
-    globalEnv.register(">", JSObject.newFunction(">",   (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0)));
-    globalEnv.register(">=", JSObject.newFunction(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0)));
+    globalEnv.register("+", JSObject.newFunction("+", RT.operator("+")));
+    globalEnv.register("-", JSObject.newFunction("-", RT.operator("-")));
+    globalEnv.register("/", JSObject.newFunction("/", RT.operator("/")));
+    globalEnv.register("*", JSObject.newFunction("*", RT.operator("*")));
+    globalEnv.register("%", JSObject.newFunction("%", RT.operator("%")));
+    globalEnv.register("==", JSObject.newFunction("==", RT.operator("==")));
+    globalEnv.register("!=", JSObject.newFunction("!=", RT.operator("!=")));
+    globalEnv.register("<", JSObject.newFunction("<", RT.operator("<")));
+    globalEnv.register("<=", JSObject.newFunction("<=", RT.operator("<=")));
+    globalEnv.register(">", JSObject.newFunction(">", RT.operator(">")));
+    globalEnv.register(">=", JSObject.newFunction(">=", RT.operator(">=")));
     return globalEnv;
   }
 
   public static void interpret(Script script, PrintStream outStream) {
+    interpret(script, outStream, ByteCodeRewriter.Options.DEFAULT);
+  }
+
+  static void interpret(Script script, PrintStream outStream, ByteCodeRewriter.Options options) {
     var globalEnv = createGlobalEnv(outStream);
-    var body = script.body();
-    var function = ByteCodeRewriter.createFunction("main", List.of(), body, globalEnv);
+    var body = Optimizer.optimize(script).body();
+    var function = ByteCodeRewriter.createFunction("main", List.of(), body, globalEnv, options);
     function.invoke(UNDEFINED);
   }
 }
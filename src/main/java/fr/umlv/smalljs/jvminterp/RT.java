@@ -2,10 +2,12 @@ package fr.umlv.smalljs.jvminterp;
 
 import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
 import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.filterReturnValue;
 import static java.lang.invoke.MethodHandles.foldArguments;
 import static java.lang.invoke.MethodHandles.guardWithTest;
 import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodHandles.invoker;
+import static java.lang.invoke.MethodType.genericMethodType;
 import static java.lang.invoke.MethodType.methodType;
 
 import java.lang.invoke.CallSite;
@@ -15,12 +17,16 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.MutableCallSite;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
 
 public final class RT {
-  private static final MethodHandle LOOKUP_OR_DEFAULT, LOOKUP_OR_FAIL, REGISTER, INVOKE, TRUTH, LOOKUP_MH;
+  private static final MethodHandle LOOKUP_OR_DEFAULT, LOOKUP_OR_FAIL, REGISTER, TRUTH,
+      LAYOUT_CHECK, FAST_ACCESS, FAST_WRITE;
   static {
     var lookup = MethodHandles.lookup();
     try {
@@ -28,11 +34,11 @@ public final class RT {
       LOOKUP_OR_FAIL = lookup.findStatic(RT.class, "lookupOrFail", methodType(Object.class, JSObject.class, String.class));
       REGISTER = lookup.findVirtual(JSObject.class, "register", methodType(void.class, String.class, Object.class));
 
-      INVOKE = lookup.findVirtual(JSObject.class, "invoke", methodType(Object.class, Object.class, Object[].class));
-
       TRUTH = lookup.findStatic(RT.class, "truth", methodType(boolean.class, Object.class));
 
-      LOOKUP_MH = lookup.findStatic(RT.class, "lookupMethodHandle", methodType(MethodHandle.class, JSObject.class, String.class));
+      LAYOUT_CHECK = lookup.findStatic(RT.class, "layoutCheck", methodType(boolean.class, Object.class, Object.class));
+      FAST_ACCESS = lookup.findVirtual(JSObject.class, "fastAccess", methodType(Object.class, int.class));
+      FAST_WRITE = lookup.findVirtual(JSObject.class, "fastWrite", methodType(void.class, int.class, Object.class));
     } catch (NoSuchMethodException | IllegalAccessException e) {
       throw new AssertionError(e);
     }
@@ -46,7 +52,10 @@ public final class RT {
     return constant;
   }
 
-  @SuppressWarnings("unused")  // used by a method handle
+  public static Object bsm_layout(Lookup lookup, String name, Class<?> type, String... keys) {
+    return JSObject.layoutOf(List.of(keys));
+  }
+
   private static Object lookupOrFail(JSObject jsObject, String key) {
     var value = jsObject.lookupOrDefault(key, null);
     if (value == null) {
@@ -55,78 +64,609 @@ public final class RT {
     return value;
   }
 
-  public static CallSite bsm_lookup(Lookup lookup, String name, MethodType type, String variableName) {
-    throw new UnsupportedOperationException("TODO bsm_lookup");
-    //var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    //var globalEnv = classLoader.getGlobal();
-    // get the LOOKUP_OR_FAIL method handle
-    // use the global environment as first argument and the variableName as second argument
-    // create a constant callsite
+  // a call site that sees the value of a global variable as a constant,
+  // the constant is guarded by the switch point of the variable and is relinked
+  // when the variable is registered or changed, a variable that changes too often
+  // (a counter of a top-level loop by example) is looked up each time
+  private static final class LookupCallSite extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(LookupCallSite.class, "slowPath", methodType(Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    // number of times the call site is relinked before giving up on the constant
+    private static final int MAX_RELINK = 8;
+
+    private final JSObject globalEnv;
+    private final String variableName;
+    private int relinkCount;
+
+    private LookupCallSite(MethodType type, JSObject globalEnv, String variableName) {
+      super(type);
+      this.globalEnv = globalEnv;
+      this.variableName = variableName;
+      setTarget(SLOW_PATH.bindTo(this));
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object slowPath() {
+      if (relinkCount++ == MAX_RELINK) {
+        setTarget(insertArguments(LOOKUP_OR_FAIL, 0, globalEnv, variableName));
+        return lookupOrFail(globalEnv, variableName);
+      }
+      // get the switch point before the value, so a concurrent change is not missed
+      var switchPoint = globalEnv.switchPoint(variableName);
+      var value = lookupOrFail(globalEnv, variableName);
+      var constant = MethodHandles.constant(Object.class, value);
+      setTarget(switchPoint.guardWithTest(constant, SLOW_PATH.bindTo(this)));
+      return value;
+    }
+  }
+
+  public static CallSite bsm_lookup(Lookup lookup, String name, MethodType type, String variableName, JSObject globalEnv) {
+    return new LookupCallSite(type, globalEnv, variableName);
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean functionCheck(Object qualifier, Object function) {
+    return qualifier == function;
+  }
+
+  // an inlining cache that guards on the identity of the called function
+  // and calls its method handle directly with the exact arity
+  private static final class FunCallInliningCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, GENERIC_CALL, FUNCTION_CHECK;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(FunCallInliningCache.class, "slowPath", methodType(Object.class, Object.class, Object.class, Object[].class));
+        GENERIC_CALL = lookup.findStatic(FunCallInliningCache.class, "genericCall", methodType(Object.class, Object.class, Object.class, Object[].class));
+        FUNCTION_CHECK = lookup.findStatic(RT.class, "functionCheck", methodType(boolean.class, Object.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private int depth;
+
+    private FunCallInliningCache(MethodType type) {
+      super(type);
+      setTarget(SLOW_PATH.bindTo(this).asCollector(Object[].class, type.parameterCount() - 2).asType(type));
+    }
+
+    private static JSObject asFunction(Object qualifier) {
+      if (!(qualifier instanceof JSObject function)) {
+        throw new Failure("type error " + qualifier + " is not a function");
+      }
+      return function;
+    }
+
+    private static Object genericCall(Object qualifier, Object receiver, Object[] args) {
+      return asFunction(qualifier).invoke(receiver, args);
+    }
+
+    // use the specialized method handle of the function (see ByteCodeRewriter) if all its int parameters
+    // are called with ints, so the arguments are not boxed
+    private MethodHandle target(JSObject function) {
+      var mh = function.methodHandle();
+      var specializedMh = function.specializedMethodHandle();
+      if (specializedMh == null) {
+        return mh;
+      }
+      var specializedType = specializedMh.type();
+      for (var i = 1; i < specializedType.parameterCount(); i++) {
+        if (specializedType.parameterType(i) == int.class && type().parameterType(1 + i) != int.class) {
+          return mh;
+        }
+      }
+      return specializedMh;
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object slowPath(Object qualifier, Object receiver, Object[] args) {
+      var function = asFunction(qualifier);
+      var mh = function.methodHandle();
+      if (!mh.isVarargsCollector() && mh.type().parameterCount() != type().parameterCount() - 1) {
+        // wrong number of arguments, let invoke() report the error
+        return function.invoke(receiver, args);
+      }
+      if (depth == POLYMORPHIC_DEPTH) {
+        // megamorphic, replace the whole chain by a generic call
+        setTarget(GENERIC_CALL.asCollector(Object[].class, type().parameterCount() - 2).asType(type()));
+        depth = MEGAMORPHIC;
+      } else {
+        var guard = insertArguments(FUNCTION_CHECK, 1, function);
+        var target = dropArguments(target(function).asType(type().dropParameterTypes(0, 1)), 0, Object.class);
+        setTarget(guardWithTest(guard, target, getTarget()));
+        depth++;
+      }
+      return function.invoke(receiver, args);
+    }
   }
 
   public static CallSite bsm_funcall(Lookup lookup, String name, MethodType type) {
-    throw new UnsupportedOperationException("TODO bsm_funcall");
-    // get INVOKE method handle
-    // make it accept an Object (not a JSObject) and objects as other parameters
-    // create a constant callsite
+    return new FunCallInliningCache(type);
   }
 
-  public static Object bsm_fun(Lookup lookup, String name, Class<?> type, int funId) {
-    throw new UnsupportedOperationException("TODO bsm_fun");
-    //var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    //var globalEnv = classLoader.getGlobal();
-    // get the dictionary and get the Fun object corresponding to the id
-    // create the function using ByteCodeRewriter.createFunction(...)
+  public static Object bsm_fun(Lookup lookup, String name, Class<?> type, MethodHandle mh, MethodHandle... specializedMh) {
+    // the methods of the function are already compiled in the class of the lookup
+    return newFunction(name, mh, specializedMh.length == 0 ? null : specializedMh[0]);
   }
 
-  public static CallSite bsm_register(Lookup lookup, String name, MethodType type, String functionName) {
-    throw new UnsupportedOperationException("TODO bsm_register");
-    //var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    //var globalEnv = classLoader.getGlobal();
-    //get the REGISTER method handle
-    // use the global environment as first argument and the functionName as second argument
-    // create a constant callsite
+  static JSObject newFunction(String name, MethodHandle mh, MethodHandle specializedMh) {
+    // the specialized method handle is used by the call sites that have int arguments
+    return JSObject.newFunction(name, mh, specializedMh);
+  }
+
+  public static CallSite bsm_register(Lookup lookup, String name, MethodType type, String functionName, JSObject globalEnv) {
+    return new ConstantCallSite(insertArguments(REGISTER, 0, globalEnv, functionName));
   }
 
   @SuppressWarnings("unused")  // used by a method handle
   private static boolean truth(Object o) {
     return o != null && o != UNDEFINED && o != Boolean.FALSE;
   }
+
   public static CallSite bsm_truth(Lookup lookup, String name, MethodType type) {
-    throw new UnsupportedOperationException("TODO bsm_truth");
-    // get the TRUTH method handle
-    // create a constant callsite
+    return new ConstantCallSite(TRUTH);
+  }
+
+  private static JSObject asJSObject(Object receiver, String fieldName) {
+    if (!(receiver instanceof JSObject jsObject)) {
+      throw new Failure("type error " + receiver + " is not a JSObject, can not access to " + fieldName);
+    }
+    return jsObject;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean layoutCheck(Object receiver, Object layout) {
+    return receiver instanceof JSObject jsObject && jsObject.layout() == layout;
+  }
+
+  // number of layouts an inlining cache can chain before becoming megamorphic
+  static final int POLYMORPHIC_DEPTH = 4;
+  // depth of an inlining cache that has been replaced by a generic call
+  static final int MEGAMORPHIC = -1;
+
+  // returns the number of guards chained by an inlining cache or MEGAMORPHIC, used by the tests
+  static int cacheDepth(CallSite callSite) {
+    return switch (callSite) {
+      case GetInliningCache cache -> cache.depth;
+      case SetInliningCache cache -> cache.depth;
+      case FunCallInliningCache cache -> cache.depth;
+      case MethodCallInliningCache cache -> cache.depth;
+      default -> throw new IllegalArgumentException("not an inlining cache " + callSite);
+    };
+  }
+
+  // an inlining cache that chains guards on the layout of the receiver
+  // and directly access to the slot of the field
+  private static final class GetInliningCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, GENERIC_GET;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(GetInliningCache.class, "slowPath", methodType(Object.class, Object.class));
+        GENERIC_GET = lookup.findStatic(GetInliningCache.class, "genericGet", methodType(Object.class, Object.class, String.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final String fieldName;
+    private int depth;
+
+    private GetInliningCache(MethodType type, String fieldName) {
+      super(type);
+      this.fieldName = fieldName;
+      setTarget(SLOW_PATH.bindTo(this).asType(type));
+    }
+
+    private static Object genericGet(Object receiver, String fieldName) {
+      return asJSObject(receiver, fieldName).lookupOrDefault(fieldName, UNDEFINED);
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object slowPath(Object receiver) {
+      var jsObject = asJSObject(receiver, fieldName);
+      var slot = jsObject.layoutSlot(fieldName);
+      if (slot == -1) {
+        // the value comes from the prototype chain (or is undefined), do not cache it
+        return jsObject.lookupOrDefault(fieldName, UNDEFINED);
+      }
+      if (depth == POLYMORPHIC_DEPTH) {
+        // megamorphic, replace the whole chain by a generic get
+        setTarget(insertArguments(GENERIC_GET, 1, fieldName).asType(type()));
+        depth = MEGAMORPHIC;
+      } else {
+        var guard = insertArguments(LAYOUT_CHECK, 1, jsObject.layout());
+        var target = insertArguments(FAST_ACCESS, 1, slot).asType(type());
+        setTarget(guardWithTest(guard, target, getTarget()));
+        depth++;
+      }
+      return jsObject.fastAccess(slot);
+    }
+  }
+
+  private static final class SetInliningCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, GENERIC_SET;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(SetInliningCache.class, "slowPath", methodType(void.class, Object.class, Object.class));
+        GENERIC_SET = lookup.findStatic(SetInliningCache.class, "genericSet", methodType(void.class, Object.class, String.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final String fieldName;
+    private int depth;
+
+    private SetInliningCache(MethodType type, String fieldName) {
+      super(type);
+      this.fieldName = fieldName;
+      setTarget(SLOW_PATH.bindTo(this).asType(type));
+    }
+
+    private static void genericSet(Object receiver, String fieldName, Object value) {
+      asJSObject(receiver, fieldName).register(fieldName, value);
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private void slowPath(Object receiver, Object value) {
+      var jsObject = asJSObject(receiver, fieldName);
+      var slot = jsObject.layoutSlot(fieldName);
+      if (slot == -1) {
+        // adding a new field changes the layout, do not cache it
+        jsObject.register(fieldName, value);
+        return;
+      }
+      if (depth == POLYMORPHIC_DEPTH) {
+        // megamorphic, replace the whole chain by a generic set
+        setTarget(insertArguments(GENERIC_SET, 1, fieldName).asType(type()));
+        depth = MEGAMORPHIC;
+      } else {
+        var guard = insertArguments(LAYOUT_CHECK, 1, jsObject.layout());
+        var target = insertArguments(FAST_WRITE, 1, slot).asType(type());
+        setTarget(guardWithTest(guard, target, getTarget()));
+        depth++;
+      }
+      jsObject.fastWrite(slot, value);
+    }
   }
 
   public static CallSite bsm_get(Lookup lookup, String name, MethodType type, String fieldName) {
-    throw new UnsupportedOperationException("TODO bsm_get");
-    // get the LOOKUP_OR_DEFAULT method handle
-    // use the fieldName and UNDEFINED as second argument and third argument
-    // make it accept an Object (not a JSObject) as first parameter
-    // create a constant callsite
+    return new GetInliningCache(type, fieldName);
   }
 
   public static CallSite bsm_set(Lookup lookup, String name, MethodType type, String fieldName) {
-    throw new UnsupportedOperationException("TODO bsm_set");
-    // get the REGISTER method handle
-    // use the fieldName as second argument
-    // make it accept an Object (not a JSObject) as first parameter
-    // create a constant callsite
+    return new SetInliningCache(type, fieldName);
+  }
+
+  private static JSObject lookupMethod(JSObject receiver, String methodName) {
+    var method = receiver.lookupOrDefault(methodName, null);
+    if (!(method instanceof JSObject function)) {
+      throw new Failure("no method " + methodName);
+    }
+    return function;
   }
 
   @SuppressWarnings("unused")  // used by a method handle
-  private static MethodHandle lookupMethodHandle(JSObject receiver, String fieldName) {
-    var function = (JSObject) receiver.lookupOrDefault(fieldName, null);
-    if (function == null) {
-      throw new Failure("no method " + fieldName);
+  private static boolean ownMethodCheck(Object receiver, Object layout, int slot, Object function) {
+    return receiver instanceof JSObject jsObject && jsObject.layout() == layout && jsObject.fastAccess(slot) == function;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean protoMethodCheck(Object receiver, Object layout, JSObject proto, int slot, Object function) {
+    // slots are never removed, so a slot of the prototype always stores the same field
+    return receiver instanceof JSObject jsObject && jsObject.layout() == layout && jsObject.proto() == proto
+        && proto.fastAccess(slot) == function;
+  }
+
+  // an inlining cache that guards on the layout of the receiver and the identity of the method
+  // (found in the receiver or in its prototype) and calls the method handle of the method directly
+  private static final class MethodCallInliningCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, GENERIC_CALL, OWN_METHOD_CHECK, PROTO_METHOD_CHECK;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(MethodCallInliningCache.class, "slowPath", methodType(Object.class, Object.class, Object[].class));
+        GENERIC_CALL = lookup.findStatic(MethodCallInliningCache.class, "genericCall", methodType(Object.class, String.class, Object.class, Object[].class));
+        OWN_METHOD_CHECK = lookup.findStatic(RT.class, "ownMethodCheck", methodType(boolean.class, Object.class, Object.class, int.class, Object.class));
+        PROTO_METHOD_CHECK = lookup.findStatic(RT.class, "protoMethodCheck", methodType(boolean.class, Object.class, Object.class, JSObject.class, int.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final String methodName;
+    private int depth;
+
+    private MethodCallInliningCache(MethodType type, String methodName) {
+      super(type);
+      this.methodName = methodName;
+      setTarget(SLOW_PATH.bindTo(this).asCollector(Object[].class, type.parameterCount() - 1).asType(type));
+    }
+
+    private static Object genericCall(String methodName, Object receiver, Object[] args) {
+      var jsObject = asJSObject(receiver, methodName);
+      return lookupMethod(jsObject, methodName).invoke(jsObject, args);
+    }
+
+    private MethodHandle guard(JSObject receiver, JSObject function) {
+      var slot = receiver.layoutSlot(methodName);
+      if (slot != -1) {
+        return insertArguments(OWN_METHOD_CHECK, 1, receiver.layout(), slot, function);
+      }
+      var proto = receiver.proto();
+      if (proto == null) {
+        return null;
+      }
+      var protoSlot = proto.layoutSlot(methodName);
+      if (protoSlot == -1) {  // only the first prototype is cached
+        return null;
+      }
+      return insertArguments(PROTO_METHOD_CHECK, 1, receiver.layout(), proto, protoSlot, function);
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object slowPath(Object receiver, Object[] args) {
+      var jsObject = asJSObject(receiver, methodName);
+      var function = lookupMethod(jsObject, methodName);
+      var mh = function.methodHandle();
+      if (!mh.isVarargsCollector() && mh.type().parameterCount() != type().parameterCount()) {
+        // wrong number of arguments, let invoke() report the error
+        return function.invoke(jsObject, args);
+      }
+      if (depth == POLYMORPHIC_DEPTH) {
+        // megamorphic, replace the whole chain by a generic call
+        setTarget(insertArguments(GENERIC_CALL, 0, methodName)
+            .asCollector(Object[].class, type().parameterCount() - 1)
+            .asType(type()));
+        depth = MEGAMORPHIC;
+      } else {
+        var guard = guard(jsObject, function);
+        if (guard != null) {
+          setTarget(guardWithTest(guard, mh.asType(type()), getTarget()));
+          depth++;
+        }
+      }
+      return function.invoke(jsObject, args);
     }
-    return function.methodHandle();
   }
 
   public static CallSite bsm_methodcall(Lookup lookup, String name, MethodType type) {
-    throw new UnsupportedOperationException("TODO bsm_methodcall");
-    //var combiner = insertArguments(METH_LOOKUP_MH, 1, name).asType(methodType(MethodHandle.class, Object.class));
-    //var target = foldArguments(invoker(type), combiner);
-    //return new ConstantCallSite(target);
+    return new MethodCallInliningCache(type, name);
+  }
+
+  // builtin operators, the generic versions are registered in the global environment
+  // and the int versions are used by the operator call sites when the operands are ints
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object add(Object receiver, Object a, Object b) { return (Integer) a + (Integer) b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object sub(Object receiver, Object a, Object b) { return (Integer) a - (Integer) b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object mul(Object receiver, Object a, Object b) { return (Integer) a * (Integer) b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object div(Object receiver, Object a, Object b) { return (Integer) a / (Integer) b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object mod(Object receiver, Object a, Object b) { return (Integer) a % (Integer) b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object eq(Object receiver, Object a, Object b) { return a.equals(b); }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object ne(Object receiver, Object a, Object b) { return !a.equals(b); }
+  @SuppressWarnings({"unused", "unchecked"})  // used by a method handle
+  private static Object lt(Object receiver, Object a, Object b) { return ((Comparable<Object>) a).compareTo(b) < 0; }
+  @SuppressWarnings({"unused", "unchecked"})  // used by a method handle
+  private static Object le(Object receiver, Object a, Object b) { return ((Comparable<Object>) a).compareTo(b) <= 0; }
+  @SuppressWarnings({"unused", "unchecked"})  // used by a method handle
+  private static Object gt(Object receiver, Object a, Object b) { return ((Comparable<Object>) a).compareTo(b) > 0; }
+  @SuppressWarnings({"unused", "unchecked"})  // used by a method handle
+  private static Object ge(Object receiver, Object a, Object b) { return ((Comparable<Object>) a).compareTo(b) >= 0; }
+
+  // wrap on overflow like the generic versions
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int addInt(int a, int b) { return a + b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int subInt(int a, int b) { return a - b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int mulInt(int a, int b) { return a * b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int divInt(int a, int b) { return a / b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int modInt(int a, int b) { return a % b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean eqInt(int a, int b) { return a == b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean neInt(int a, int b) { return a != b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean ltInt(int a, int b) { return a < b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean leInt(int a, int b) { return a <= b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean gtInt(int a, int b) { return a > b; }
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean geInt(int a, int b) { return a >= b; }
+
+  private record Operator(MethodHandle generic, MethodHandle intOp) {}
+
+  private static final Map<String, Operator> OPERATOR_MAP;
+  static {
+    var lookup = MethodHandles.lookup();
+    var operatorMap = new HashMap<String, Operator>();
+    try {
+      operatorMap.put("+", findOperator(lookup, "add", int.class));
+      operatorMap.put("-", findOperator(lookup, "sub", int.class));
+      operatorMap.put("*", findOperator(lookup, "mul", int.class));
+      operatorMap.put("/", findOperator(lookup, "div", int.class));
+      operatorMap.put("%", findOperator(lookup, "mod", int.class));
+      operatorMap.put("==", findOperator(lookup, "eq", boolean.class));
+      operatorMap.put("!=", findOperator(lookup, "ne", boolean.class));
+      operatorMap.put("<", findOperator(lookup, "lt", boolean.class));
+      operatorMap.put("<=", findOperator(lookup, "le", boolean.class));
+      operatorMap.put(">", findOperator(lookup, "gt", boolean.class));
+      operatorMap.put(">=", findOperator(lookup, "ge", boolean.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+    OPERATOR_MAP = Map.copyOf(operatorMap);
+  }
+
+  private static Operator findOperator(Lookup lookup, String name, Class<?> intReturnType) throws NoSuchMethodException, IllegalAccessException {
+    var generic = lookup.findStatic(RT.class, name, genericMethodType(3));
+    var intOp = lookup.findStatic(RT.class, name + "Int", methodType(intReturnType, int.class, int.class));
+    return new Operator(generic, intOp);
+  }
+
+  static boolean isOperator(String name) {
+    return OPERATOR_MAP.containsKey(name);
+  }
+
+  // returns the method handle of a builtin operator, it takes a receiver and two operands as parameters
+  public static MethodHandle operator(String name) {
+    var operator = OPERATOR_MAP.get(name);
+    if (operator == null) {
+      throw new IllegalArgumentException("unknown operator " + name);
+    }
+    return operator.generic;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean intCheck(Object a, Object b) {
+    return a instanceof Integer && b instanceof Integer;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static int asInt(Object value) {
+    if (!(value instanceof Integer integer)) {
+      throw new Failure("type error " + value + " is not an int");
+    }
+    return integer;
+  }
+
+  // a call site of a builtin operator that records the types of the operands,
+  // while only ints are seen, it uses an unboxed int version of the operator,
+  // a non int value is computed by the generic version, once DEOPTIMIZATION_THRESHOLD non int values
+  // have been seen, the call site falls back to the generic version for good.
+  // The int versions wrap on overflow like the generic versions, so an overflow never deoptimizes.
+  // The value of the operator is guarded by the switch point of the operator in the global environment.
+  // The targets are created with the generic type (Object, Object)Object and adapted to the type
+  // of the call site, so a call site typed with ints (see TypeInference) has no boxing at all,
+  // a call site typed with objects still boxes the result of the int version.
+  // If the operator is redefined after the code is generated, the result of the new operator is converted
+  // to the return type of a call site typed with ints, an int or a boolean (using the truth).
+  private static final class OperatorCallSite extends MutableCallSite {
+    private static final int DEOPTIMIZATION_THRESHOLD = 8;
+    private static final MethodHandle SLOW_PATH, DEOPTIMIZE, INT_CHECK, AS_INT;
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(OperatorCallSite.class, "slowPath", methodType(Object.class, Object.class, Object.class));
+        DEOPTIMIZE = lookup.findVirtual(OperatorCallSite.class, "deoptimize", methodType(Object.class, Object.class, Object.class));
+        INT_CHECK = lookup.findStatic(RT.class, "intCheck", methodType(boolean.class, Object.class, Object.class));
+        AS_INT = lookup.findStatic(RT.class, "asInt", methodType(int.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final JSObject globalEnv;
+    private final String operatorName;
+    private final Operator operator;
+    private boolean intOnly = true;
+    private int nonIntCount;
+
+    private OperatorCallSite(MethodType type, JSObject globalEnv, String operatorName) {
+      super(type);
+      this.globalEnv = globalEnv;
+      this.operatorName = operatorName;
+      this.operator = OPERATOR_MAP.get(operatorName);
+      setTarget(slowPath());
+    }
+
+    private MethodHandle slowPath() {
+      return adapt(SLOW_PATH.bindTo(this), type());
+    }
+
+    // adapt a target that returns an Object to a type that may return an int or a boolean
+    private static MethodHandle adapt(MethodHandle target, MethodType type) {
+      var returnType = type.returnType();
+      if (returnType == int.class) {
+        target = filterReturnValue(target, AS_INT);
+      } else if (returnType == boolean.class) {
+        target = filterReturnValue(target, TRUTH);
+      }
+      return target.asType(type);
+    }
+
+    private Object callGeneric(Object a, Object b) throws Throwable {
+      return operator.generic.invokeExact((Object) UNDEFINED, a, b);
+    }
+
+    private MethodHandle generic() {
+      return insertArguments(operator.generic, 0, UNDEFINED);
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object slowPath(Object a, Object b) throws Throwable {
+      // get the switch point before the value, so a concurrent change is not missed
+      var switchPoint = globalEnv.switchPoint(operatorName);
+      var function = FunCallInliningCache.asFunction(lookupOrFail(globalEnv, operatorName));
+      var mh = function.methodHandle();
+      if (mh != operator.generic) {
+        // the operator has been redefined, do a classical function call
+        if (mh.isVarargsCollector() || mh.type().parameterCount() == 3) {
+          var target = insertArguments(mh.asType(genericMethodType(3)), 0, UNDEFINED);
+          setTarget(switchPoint.guardWithTest(adapt(target, type()), slowPath()));
+        }
+        return function.invoke(UNDEFINED, a, b);
+      }
+      if (intOnly && !intCheck(a, b) && ++nonIntCount >= DEOPTIMIZATION_THRESHOLD) {
+        intOnly = false;
+      }
+      MethodHandle target;
+      if (intOnly && type().parameterType(0) == int.class && type().parameterType(1) == int.class) {
+        // the operands are statically typed as ints, no need to check them
+        setTarget(switchPoint.guardWithTest(operator.intOp.asType(type()), slowPath()));
+        return callGeneric(a, b);
+      }
+      if (intOnly) {
+        var intOp = operator.intOp.asType(genericMethodType(2));
+        target = guardWithTest(INT_CHECK, intOp, DEOPTIMIZE.bindTo(this));
+      } else {
+        target = generic();
+      }
+      setTarget(switchPoint.guardWithTest(adapt(target, type()), slowPath()));
+      return callGeneric(a, b);
+    }
+
+    @SuppressWarnings("unused")  // used by a method handle
+    private Object deoptimize(Object a, Object b) throws Throwable {
+      if (++nonIntCount < DEOPTIMIZATION_THRESHOLD) {
+        return callGeneric(a, b);
+      }
+      intOnly = false;
+      setTarget(slowPath());
+      return slowPath(a, b);
+    }
+  }
+
+  // returns true if an operator call site still uses the int version of the operator, used by the tests
+  static boolean isIntSpecialized(CallSite callSite) {
+    if (!(callSite instanceof OperatorCallSite operatorCallSite)) {
+      throw new IllegalArgumentException("not an operator call site " + callSite);
+    }
+    return operatorCallSite.intOnly;
+  }
+
+  public static CallSite bsm_operator(Lookup lookup, String name, MethodType type, String operatorName, JSObject globalEnv) {
+    return new OperatorCallSite(type, globalEnv, operatorName);
   }
 }
@@ -0,0 +1,376 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.astinterp.ASTInterpreter;
+import fr.umlv.smalljs.rt.Failure;
+import fr.umlv.smalljs.rt.JSObject;
+
+// start by interpreting the script with the AST interpreter, and compile the functions that are called often
+// with the ByteCodeRewriter.
+// A function object uses the dynamic invoker of a mutable callsite as method handle, so the callers,
+// interpreted or compiled, see the compiled code once the target of the callsite has been swapped.
+// The callsite is also the invoker of the function object, so an interpreted tail call to an interpreted
+// function does not grow the Java stack, and the compiled code of a function knows its function object,
+// so a tail call to itself is a loop.
+// The compilation is done by background threads, the function stays interpreted until its code is ready
+// or for good if it can not be compiled.
+// The AST interpreter considers 0 as false and undefined as true while the compiled code considers
+// 0 as true and undefined as false (see RT.truth), the comparisons of the JVM global environment return
+// a Boolean which has the same truth for both, so only the functions with conditions that are comparisons
+// (or literals with the same truth) are compiled, so a function computes the same values before and after
+// its compilation.
+// A function called once but with a hot loop leaves the interpreter at a back edge of the loop (on-stack
+// replacement), the end of the function from the loop is compiled as a function that takes the local
+// variables as parameters. A hot loop of the top level code is compiled alone as a function with no parameter,
+// the top level variables are global variables and the compiled code can not assign a global variable,
+// so the assignments are rewritten as assignments of the fields of globalThis.
+public final class TieredInterpreter {
+  static final int HOT_THRESHOLD = 1_000;
+
+  private static final System.Logger LOGGER = System.getLogger(TieredInterpreter.class.getName());
+
+  private static final ExecutorService COMPILER = Executors.newFixedThreadPool(
+      Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+      Thread.ofPlatform().name("smalljs-compiler-", 0).daemon().factory());
+
+  private static final MethodHandle INTERPRET;
+  static {
+    try {
+      INTERPRET = lookup().findVirtual(TieredCallSite.class, "interpret",
+          methodType(Object.class, Object.class, Object[].class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final class TieredCallSite extends MutableCallSite implements ASTInterpreter.TieredInvoker {
+    private final Fun fun;
+    private final JSObject.Invoker invoker;
+    private final JSObject globalEnv;
+    private final int threshold;
+    private final Executor compiler;
+    private final Consumer<? super Fun> compilationListener;
+    // the function can be called by several threads, only the call that reaches the threshold
+    // submits the compilation, the counter stops at the threshold
+    private final AtomicInteger counter = new AtomicInteger();
+    private final JSObject function;
+    // published by a compiler thread, null while the function is interpreted
+    private volatile JSObject compiled;
+
+    private TieredCallSite(Fun fun, JSObject.Invoker invoker, JSObject globalEnv, int threshold,
+                           Executor compiler, Consumer<? super Fun> compilationListener) {
+      super(genericMethodType(1 + fun.parameters().size()));
+      this.fun = fun;
+      this.invoker = invoker;
+      this.globalEnv = globalEnv;
+      this.threshold = threshold;
+      this.compiler = compiler;
+      this.compilationListener = compilationListener;
+      setTarget(INTERPRET.bindTo(this).asCollector(Object[].class, fun.parameters().size()).asType(type()));
+      this.function = JSObject.newFunction(fun.name(), dynamicInvoker(), this);
+    }
+
+    private void count() {
+      if (counter.get() < threshold && counter.incrementAndGet() == threshold) {
+        compiler.execute(this::compile);
+      }
+    }
+
+    private Object interpret(Object receiver, Object[] args) {
+      count();
+      return invoker.invoke(receiver, args);
+    }
+
+    @Override
+    public JSObject.Invoker interpreter() {
+      if (compiled != null) {
+        return null;
+      }
+      count();
+      return invoker;
+    }
+
+    @Override
+    public Object invoke(Object receiver, Object... args) {
+      if (interpreter() instanceof JSObject.Invoker interpreter) {
+        return interpreter.invoke(receiver, args);
+      }
+      return compiled.invoke(receiver, args);
+    }
+
+    private void compile() {
+      var compiled = TieredInterpreter.compile(fun, globalEnv, function);
+      if (compiled == null) {
+        return;
+      }
+      setTarget(compiled.methodHandle());
+      // the target is changed by a compiler thread, publish it to the executing threads
+      MutableCallSite.syncAll(new MutableCallSite[] { this });
+      this.compiled = compiled;
+      compilationListener.accept(fun);
+    }
+  }
+
+  // the on-stack replacement of a loop of the body of a function or of the top level code,
+  // the continuation is compiled when the back edges of the loop reach the threshold
+  private static final class TieredLoop implements ASTInterpreter.OnStackReplacement {
+    private final Fun fun;  // the continuation
+    private final JSObject globalEnv;
+    private final int threshold;
+    private final Executor compiler;
+    private final Consumer<? super Fun> compilationListener;
+    // same protocol as the counter of TieredCallSite
+    private final AtomicInteger counter = new AtomicInteger();
+    // published by a compiler thread
+    private volatile JSObject.Invoker continuation;
+
+    private TieredLoop(Fun fun, JSObject globalEnv, int threshold,
+                       Executor compiler, Consumer<? super Fun> compilationListener) {
+      this.fun = fun;
+      this.globalEnv = globalEnv;
+      this.threshold = threshold;
+      this.compiler = compiler;
+      this.compilationListener = compilationListener;
+    }
+
+    @Override
+    public JSObject.Invoker backEdge() {
+      if (counter.get() < threshold && counter.incrementAndGet() == threshold) {
+        compiler.execute(this::compile);
+      }
+      return continuation;
+    }
+
+    private void compile() {
+      var function = TieredInterpreter.compile(fun, globalEnv, null);
+      if (function == null) {
+        return;
+      }
+      continuation = function::invoke;
+      compilationListener.accept(fun);
+    }
+  }
+
+  // returns the compiled function or null if the function stays interpreted,
+  // self is the function object of the function or null
+  private static JSObject compile(Fun fun, JSObject globalEnv, JSObject self) {
+    try {
+      return ByteCodeRewriter.createFunction(fun.name(), fun.parameters(), fun.body(), globalEnv, self);
+    } catch (Failure e) {
+      // the function can not be compiled (by example, it assigns a global variable)
+      return null;
+    } catch (RuntimeException | LinkageError e) {
+      // a bug of the compiler or a limit of the JVM (by example, a method too large)
+      LOGGER.log(WARNING, "can not compile function " + fun.name(), e);
+      return null;
+    }
+  }
+
+  // the end of a function from the condition of the loop at statementIndex, the loop and the statements
+  // that follow it, the variables of the function are the parameters so they are not declared again
+  private static Fun continuation(Fun fun, int statementIndex, List<String> variables) {
+    var exprs = fun.body().exprs();
+    var loop = (Loop) exprs.get(statementIndex);
+    var body = new ArrayList<Expr>();
+    // the continuation starts at a back edge, so the condition is tested first
+    body.add(new Loop(loop.condition(), (Block) undeclare(loop.body()), (Block) undeclare(loop.update()),
+        true, loop.lineNumber()));
+    for (var expr : exprs.subList(statementIndex + 1, exprs.size())) {
+      body.add(undeclare(expr));
+    }
+    return new Fun(fun.name() + "$osr", variables, false, new Block(body, loop.lineNumber()), loop.lineNumber());
+  }
+
+  // the rest of a loop of the top level code from its condition
+  private static Fun topLevelContinuation(Loop loop) {
+    var continuation = new Loop(loop.condition(), (Block) globalWrites(loop.body()), (Block) globalWrites(loop.update()),
+        true, loop.lineNumber());
+    return new Fun("script$osr", List.of(), false, new Block(List.of(continuation), loop.lineNumber()),
+        loop.lineNumber());
+  }
+
+  // replaces the declarations and the assignments of the global variables by assignments of the fields
+  // of globalThis, all the variables of the top level code are global variables
+  private static Expr globalWrites(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, int lineNumber) ->
+          new Block(exprs.stream().map(TieredInterpreter::globalWrites).toList(), lineNumber);
+      case VarAssignment(String name, Expr expr, _, int lineNumber) ->
+          new FieldAssignment(new Identifier("globalThis", lineNumber), name, expr, lineNumber);
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) ->
+          new If(condition, (Block) globalWrites(trueBlock), (Block) globalWrites(falseBlock), lineNumber);
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) ->
+          new Loop(condition, (Block) globalWrites(body), (Block) globalWrites(update), testFirst, lineNumber);
+      default -> expression;
+    };
+  }
+
+  // true if the expression assigns (or declares) a variable named globalThis
+  private static boolean assignsGlobalThis(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> exprs.stream().anyMatch(TieredInterpreter::assignsGlobalThis);
+      case Literal _, Identifier _, Break _, Continue _ -> false;
+      case Call(Expr qualifier, List<Expr> args, _) ->
+          assignsGlobalThis(qualifier) || args.stream().anyMatch(TieredInterpreter::assignsGlobalThis);
+      case VarAssignment(String name, Expr expr, _, _) -> name.equals("globalThis") || assignsGlobalThis(expr);
+      case Fun(String name, List<String> parameters, _, Block body, _) ->
+          name.equals("globalThis") || parameters.contains("globalThis") || assignsGlobalThis(body);
+      case Return(Expr expr, _) -> assignsGlobalThis(expr);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) ->
+          assignsGlobalThis(condition) || assignsGlobalThis(trueBlock) || assignsGlobalThis(falseBlock);
+      case Loop(Expr condition, Block body, Block update, _, _) ->
+          assignsGlobalThis(condition) || assignsGlobalThis(body) || assignsGlobalThis(update);
+      case ObjectLiteral(Map<String, Expr> initMap, _) ->
+          initMap.values().stream().anyMatch(TieredInterpreter::assignsGlobalThis);
+      case FieldAccess(Expr receiver, _, _) -> assignsGlobalThis(receiver);
+      case FieldAssignment(Expr receiver, _, Expr expr, _) -> assignsGlobalThis(receiver) || assignsGlobalThis(expr);
+      case MethodCall(Expr receiver, _, List<Expr> args, _) ->
+          assignsGlobalThis(receiver) || args.stream().anyMatch(TieredInterpreter::assignsGlobalThis);
+    };
+  }
+
+  // replaces the declarations by assignments, a declaration is a statement, not an expression
+  private static Expr undeclare(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, int lineNumber) ->
+          new Block(exprs.stream().map(TieredInterpreter::undeclare).toList(), lineNumber);
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) when declaration ->
+          new VarAssignment(name, expr, false, lineNumber);
+      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) ->
+          new If(condition, (Block) undeclare(trueBlock), (Block) undeclare(falseBlock), lineNumber);
+      case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) ->
+          new Loop(condition, (Block) undeclare(body), (Block) undeclare(update), testFirst, lineNumber);
+      default -> expression;
+    };
+  }
+
+  // the JVM backend has no closure, so only the functions declared in the global environment
+  // and with no nested function can be compiled
+  private static boolean isCompilable(Fun fun, boolean inGlobalScope) {
+    return inGlobalScope && !containsFun(fun.body()) && hasSameTruthConditions(fun.body());
+  }
+
+  private static final Set<String> COMPARISONS = Set.of("==", "!=", "<", "<=", ">", ">=");
+
+  // true if the value of the condition has the same truth for the AST interpreter and the compiled code
+  private static boolean hasSameTruth(Expr condition) {
+    return switch (condition) {
+      case Call(Identifier(String name, _), List<Expr> args, _) -> COMPARISONS.contains(name) && args.size() == 2;
+      case Literal(Object value, _) -> !(value instanceof Integer integer && integer == 0) && value != UNDEFINED;
+      default -> false;
+    };
+  }
+
+  private static boolean hasSameTruthConditions(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> exprs.stream().allMatch(TieredInterpreter::hasSameTruthConditions);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) ->
+          hasSameTruth(condition) && hasSameTruthConditions(trueBlock) && hasSameTruthConditions(falseBlock);
+      case Loop(Expr condition, Block body, Block update, _, _) ->
+          hasSameTruth(condition) && hasSameTruthConditions(body) && hasSameTruthConditions(update);
+      // the other expressions have no condition, a nested function is rejected by containsFun
+      default -> true;
+    };
+  }
+
+  private static boolean containsFun(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> exprs.stream().anyMatch(TieredInterpreter::containsFun);
+      case Literal _, Identifier _ -> false;
+      case Call(Expr qualifier, List<Expr> args, _) ->
+          containsFun(qualifier) || args.stream().anyMatch(TieredInterpreter::containsFun);
+      case VarAssignment(_, Expr expr, _, _) -> containsFun(expr);
+      case Fun _ -> true;
+      case Return(Expr expr, _) -> containsFun(expr);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) ->
+          containsFun(condition) || containsFun(trueBlock) || containsFun(falseBlock);
+      case Loop(Expr condition, Block body, Block update, _, _) ->
+          containsFun(condition) || containsFun(body) || containsFun(update);
+      case Break _, Continue _ -> false;
+      case ObjectLiteral(Map<String, Expr> initMap, _) ->
+          initMap.values().stream().anyMatch(TieredInterpreter::containsFun);
+      case FieldAccess(Expr receiver, _, _) -> containsFun(receiver);
+      case FieldAssignment(Expr receiver, _, Expr expr, _) -> containsFun(receiver) || containsFun(expr);
+      case MethodCall(Expr receiver, _, List<Expr> args, _) ->
+          containsFun(receiver) || args.stream().anyMatch(TieredInterpreter::containsFun);
+    };
+  }
+
+  static void interpret(Script script, PrintStream outStream, int threshold,
+                        Executor compiler, Consumer<? super Fun> compilationListener) {
+    var globalEnv = JVMInterpreter.createGlobalEnv(outStream);
+    // the comparisons of the JVM global environment return a Boolean
+    ASTInterpreter.interpret(script, globalEnv, true, new ASTInterpreter.FunctionFactory() {
+      @Override
+      public JSObject create(Fun fun, boolean inGlobalScope, JSObject.Invoker invoker) {
+        if (!isCompilable(fun, inGlobalScope)) {
+          return JSObject.newFunction(fun.name(), invoker);
+        }
+        return new TieredCallSite(fun, invoker, globalEnv, threshold, compiler, compilationListener).function;
+      }
+
+      // the function captures nothing, it can be compiled if it has no nested function
+      // and its variables have different names
+      @Override
+      public ASTInterpreter.OnStackReplacement onStackReplacement(Fun fun, int statementIndex, List<String> variables) {
+        if (containsFun(fun.body()) || Set.copyOf(variables).size() != variables.size()) {
+          return null;
+        }
+        var continuation = continuation(fun, statementIndex, variables);
+        if (!hasSameTruthConditions(continuation.body())) {
+          return null;
+        }
+        return new TieredLoop(continuation, globalEnv, threshold, compiler, compilationListener);
+      }
+
+      // the loop writes the global variables through globalThis, so globalThis must not be assigned
+      @Override
+      public ASTInterpreter.OnStackReplacement onStackReplacement(Block script, int statementIndex) {
+        var loop = (Loop) script.exprs().get(statementIndex);
+        if (containsFun(loop) || !hasSameTruthConditions(loop) || assignsGlobalThis(script)) {
+          return null;
+        }
+        return new TieredLoop(topLevelContinuation(loop), globalEnv, threshold, compiler, compilationListener);
+      }
+    });
+  }
+
+  public static void interpret(Script script, PrintStream outStream) {
+    interpret(script, outStream, HOT_THRESHOLD, COMPILER, _ -> {});
+  }
+}
@@ -0,0 +1,205 @@
+package fr.umlv.smalljs.jvminterp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+
+// a flow-insensitive type inference that finds the parameters and the local variables of a function
+// that always store an int, so they can be stored unboxed.
+// The builtin operators are expected to return an int or a boolean, so nothing is typed as an int
+// in a compilation unit that defines a variable with the name of an operator (see definesAnOperator),
+// an operator redefined by the host after the compilation fails with a Failure if it does not return an int.
+final class TypeInference {
+  private static final Set<String> INT_OPERATORS = Set.of("+", "-", "*", "/", "%");
+  private static final Set<String> COMPARISON_OPERATORS = Set.of("==", "!=", "<", "<=", ">", ">=");
+
+  private static boolean isOperatorCall(Call call, Set<String> operators) {
+    return call.qualifier() instanceof Identifier(String name, _) && operators.contains(name) && call.args().size() == 2;
+  }
+
+  static boolean isIntOperation(Expr expr, Set<String> intVariables) {
+    return expr instanceof Call call && isOperatorCall(call, INT_OPERATORS)
+        && isInt(call.args().get(0), intVariables) && isInt(call.args().get(1), intVariables);
+  }
+
+  static boolean isIntComparison(Expr expr, Set<String> intVariables) {
+    return expr instanceof Call call && isOperatorCall(call, COMPARISON_OPERATORS)
+        && isInt(call.args().get(0), intVariables) && isInt(call.args().get(1), intVariables);
+  }
+
+  static boolean isInt(Expr expr, Set<String> intVariables) {
+    return switch (expr) {
+      case Literal(Object value, _) -> value instanceof Integer;
+      case Identifier(String name, _) -> intVariables.contains(name);
+      case Call call -> isIntOperation(call, intVariables);
+      default -> false;
+    };
+  }
+
+  // true if the expression declares or assigns a variable (or a field of globalThis) named like
+  // a builtin operator, the same way the Optimizer does not fold an operator that may be redefined
+  static boolean definesAnOperator(Expr expression) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> exprs.stream().anyMatch(TypeInference::definesAnOperator);
+      case Literal _, Identifier _, Break _, Continue _ -> false;
+      case Call(Expr qualifier, List<Expr> args, _) ->
+          definesAnOperator(qualifier) || args.stream().anyMatch(TypeInference::definesAnOperator);
+      case VarAssignment(String name, Expr expr, _, _) -> isOperator(name) || definesAnOperator(expr);
+      case Fun(String name, List<String> parameters, _, Block body, _) ->
+          isOperator(name) || parameters.stream().anyMatch(TypeInference::isOperator) || definesAnOperator(body);
+      case Return(Expr expr, _) -> definesAnOperator(expr);
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) ->
+          definesAnOperator(condition) || definesAnOperator(trueBlock) || definesAnOperator(falseBlock);
+      case Loop(Expr condition, Block body, Block update, _, _) ->
+          definesAnOperator(condition) || definesAnOperator(body) || definesAnOperator(update);
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> initMap.values().stream().anyMatch(TypeInference::definesAnOperator);
+      case FieldAccess(Expr receiver, _, _) -> definesAnOperator(receiver);
+      case FieldAssignment(Expr receiver, String name, Expr expr, _) ->
+          isOperator(name) || definesAnOperator(receiver) || definesAnOperator(expr);
+      case MethodCall(Expr receiver, _, List<Expr> args, _) ->
+          definesAnOperator(receiver) || args.stream().anyMatch(TypeInference::definesAnOperator);
+    };
+  }
+
+  private static boolean isOperator(String name) {
+    return INT_OPERATORS.contains(name) || COMPARISON_OPERATORS.contains(name);
+  }
+
+  private static final class Info {
+    private final HashMap<String, List<Expr>> assignmentMap = new HashMap<>();
+    private final HashMap<String, Integer> declarationCountMap = new HashMap<>();
+    private final HashMap<String, Integer> firstReadMap = new HashMap<>();
+    private final HashSet<String> operandSet = new HashSet<>();
+
+    private void visit(Expr expression, int statementIndex) {
+      switch (expression) {
+        case Block(List<Expr> exprs, _) -> {
+          for (var expr : exprs) {
+            visit(expr, statementIndex);
+          }
+        }
+        case Literal _ -> {}
+        case Identifier(String name, _) -> firstReadMap.putIfAbsent(name, statementIndex);
+        case Call(Expr qualifier, List<Expr> args, _) -> {
+          if (isOperatorCall((Call) expression, INT_OPERATORS) || isOperatorCall((Call) expression, COMPARISON_OPERATORS)) {
+            for (var arg : args) {
+              if (arg instanceof Identifier(String name, _)) {
+                operandSet.add(name);
+              }
+            }
+          }
+          visit(qualifier, statementIndex);
+          for (var arg : args) {
+            visit(arg, statementIndex);
+          }
+        }
+        case VarAssignment(String name, Expr expr, boolean declaration, _) -> {
+          visit(expr, statementIndex);
+          assignmentMap.computeIfAbsent(name, _ -> new ArrayList<>()).add(expr);
+          if (declaration) {
+            declarationCountMap.merge(name, 1, Integer::sum);
+          }
+        }
+        case Fun _ -> {
+          // a nested function does not see the local variables
+        }
+        case Return(Expr expr, _) -> visit(expr, statementIndex);
+        case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+          visit(condition, statementIndex);
+          visit(trueBlock, statementIndex);
+          visit(falseBlock, statementIndex);
+        }
+        case Loop(Expr condition, Block body, Block update, _, _) -> {
+          visit(condition, statementIndex);
+          visit(body, statementIndex);
+          visit(update, statementIndex);
+        }
+        case Break _, Continue _ -> {}
+        case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+          for (var expr : initMap.values()) {
+            visit(expr, statementIndex);
+          }
+        }
+        case FieldAccess(Expr receiver, _, _) -> visit(receiver, statementIndex);
+        case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+          visit(receiver, statementIndex);
+          visit(expr, statementIndex);
+        }
+        case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+          visit(receiver, statementIndex);
+          for (var arg : args) {
+            visit(arg, statementIndex);
+          }
+        }
+      }
+    }
+  }
+
+  private static Info info(Block body) {
+    var info = new Info();
+    var exprs = body.exprs();
+    for (var i = 0; i < exprs.size(); i++) {
+      info.visit(exprs.get(i), i);
+    }
+    return info;
+  }
+
+  // returns the parameters that are used as operands of a builtin operator and are only assigned to ints,
+  // if they are ints, the function body can be specialized
+  static Set<String> intParameters(List<String> parameters, Block body) {
+    var info = info(body);
+    var candidates = new HashSet<String>();
+    for (var parameter : parameters) {
+      if (info.operandSet.contains(parameter) && !info.declarationCountMap.containsKey(parameter)) {
+        candidates.add(parameter);
+      }
+    }
+    return fixpoint(candidates, info);
+  }
+
+  // returns the parameters and local variables that always store an int if the intParameters are ints,
+  // a local variable must be declared once, in a statement of the function body (not in a nested block)
+  // and not read before that statement, so its value is never undefined
+  static Set<String> intVariables(Set<String> intParameters, Block body) {
+    var info = info(body);
+    var candidates = new HashSet<>(intParameters);
+    var exprs = body.exprs();
+    for (var i = 0; i < exprs.size(); i++) {
+      if (exprs.get(i) instanceof VarAssignment(String name, _, boolean declaration, _) && declaration
+          && info.declarationCountMap.get(name) == 1
+          && info.firstReadMap.getOrDefault(name, Integer.MAX_VALUE) > i) {
+        candidates.add(name);
+      }
+    }
+    return fixpoint(candidates, info);
+  }
+
+  private static Set<String> fixpoint(HashSet<String> candidates, Info info) {
+    boolean changed;
+    do {
+      changed = candidates.removeIf(name ->
+          !info.assignmentMap.getOrDefault(name, List.of()).stream().allMatch(expr -> isInt(expr, candidates)));
+    } while (changed);
+    return Set.copyOf(candidates);
+  }
+}
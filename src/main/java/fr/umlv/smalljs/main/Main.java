@@ -5,6 +5,7 @@ import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
 import fr.umlv.smalljs.ast.Script;
 import fr.umlv.smalljs.astinterp.ASTInterpreter;
 import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import fr.umlv.smalljs.jvminterp.TieredInterpreter;
 import fr.umlv.smalljs.stackinterp.StackInterpreter;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -19,6 +20,7 @@ public class Main {
       case "ast" -> ASTInterpreter::interpret;
       case "stack" -> StackInterpreter::interpret;
       case "jvm" -> JVMInterpreter::interpret;
+      case "tiered" -> TieredInterpreter::interpret;
       default -> throw new IllegalArgumentException("unkonwn interpreter " + name);
     };
   }
@@ -27,7 +29,7 @@ public class Main {
     System.err.println("""
             Help:
               fr.umlv.smalljs.main.Main interpreter input-file.js
-                available interpreters: "ast", "stack" or "jvm"
+                available interpreters: "ast", "stack", "jvm" or "tiered"
             """);
     System.exit(1);
   }
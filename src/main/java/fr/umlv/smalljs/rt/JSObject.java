@@ -11,16 +11,19 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.function.UnaryOperator;
 
 public final class JSObject {
   private static final class Layout {
     private final LinkedHashMap<String, Integer> slotMap;
+    private final String[] keys;  // the key of each slot
     private final HashMap<String, Layout> forwardMap = new HashMap<>();
 
     private Layout(LinkedHashMap<String, Integer> slotMap) {
       this.slotMap = slotMap;
+      this.keys = slotMap.keySet().toArray(String[]::new);
     }
 
     private int slot(String key) {
@@ -44,7 +47,10 @@ public final class JSObject {
   private Layout layout = ROOT;
   private Object[] array = EMPTY_ARRAY;
   private final MethodHandle mh;
-  private SwitchPoint switchPoint = new SwitchPoint();
+  private final MethodHandle specializedMh;
+  private final Invoker invoker;  // null if the function is not created from an invoker
+  private SwitchPoint switchPoint;
+  private HashMap<String, SwitchPoint> keySwitchPointMap;
   
   private static final class Undefined {
   	@Override public String toString() { return "undefined"; }
@@ -78,41 +84,104 @@ public final class JSObject {
     ));
   }
 
-  private JSObject(JSObject proto, String name, MethodHandle mh) {
+  private JSObject(JSObject proto, String name, MethodHandle mh, MethodHandle specializedMh, Invoker invoker) {
     this.proto = proto;
     this.name = name;
     this.mh = mh;
+    this.specializedMh = specializedMh;
+    this.invoker = invoker;
   }
   
   public static JSObject newObject(JSObject proto) {
-    return new JSObject(proto, "object", NO_INVOKER_MH);
+    return new JSObject(proto, "object", NO_INVOKER_MH, null, null);
+  }
+  // create an object with all its values at once, the layout is a layout returned by layoutOf()
+  // and the values are in the order of the keys of the layout, the array is not copied
+  public static JSObject newObject(JSObject proto, Object layout, Object[] values) {
+    if (!(layout instanceof Layout objectLayout)) {
+      throw new IllegalArgumentException("invalid layout " + layout);
+    }
+    if (values.length != objectLayout.slotMap.size()) {
+      throw new IllegalArgumentException("wrong number of values " + values.length + " " + objectLayout.slotMap.size());
+    }
+    for (var value : values) {
+      requireNonNull(value);
+    }
+    var object = newObject(proto);
+    object.layout = objectLayout;
+    object.array = values;
+    return object;
+  }
+  // the layout of an object with the keys registered in that order,
+  // the same as the layout of an object created by calling register() with the keys
+  public static Object layoutOf(List<String> keys) {
+    var layout = ROOT;
+    for (var key : keys) {
+      requireNonNull(key);
+      if (layout.slot(key) != -1) {
+        throw new IllegalArgumentException("duplicate key " + key);
+      }
+      layout = layout.forward(key);
+    }
+    return layout;
   }
   public static JSObject newEnv(JSObject parent) {
-    return new JSObject(parent, "env", NO_INVOKER_MH);
+    return new JSObject(parent, "env", NO_INVOKER_MH, null, null);
   }
   public static JSObject newFunction(String name, Invoker invoker) {
     requireNonNull(name);
     requireNonNull(invoker);
-    return newFunction(name, asMethodHandle(invoker));
+    return new JSObject(FUNCTION_PROTO, "function " + name, asMethodHandle(invoker), null, invoker);
   }
   public static JSObject newFunction(String name, MethodHandle mh) {
     requireNonNull(name);
     requireNonNull(mh);
-    return new JSObject(FUNCTION_PROTO, "function " + name, mh);
+    return new JSObject(FUNCTION_PROTO, "function " + name, mh, null, null);
+  }
+  // the invoker is an alternative way to call the function used by the interpreters, mh is used otherwise
+  public static JSObject newFunction(String name, MethodHandle mh, Invoker invoker) {
+    requireNonNull(name);
+    requireNonNull(mh);
+    requireNonNull(invoker);
+    return new JSObject(FUNCTION_PROTO, "function " + name, mh, null, invoker);
+  }
+  // specializedMh is a version of mh with some parameters typed as int (see the JVM backend) or null
+  public static JSObject newFunction(String name, MethodHandle mh, MethodHandle specializedMh) {
+    requireNonNull(name);
+    requireNonNull(mh);
+    return new JSObject(FUNCTION_PROTO, "function " + name, mh, specializedMh, null);
   }
   
   public String name() {
 		return name;
 	}
+  public JSObject proto() {
+    return proto;
+  }
   public MethodHandle methodHandle() {
     return mh;
   }
+  public MethodHandle specializedMethodHandle() {
+    return specializedMh;
+  }
+  // the invoker of a function created with an invoker or null
+  public Invoker invoker() {
+    return invoker;
+  }
   public SwitchPoint switchPoint() {
     if (switchPoint != null) {
       return switchPoint;
     }
     return switchPoint = new SwitchPoint();  // lazy allocate
   }
+  // a switch point only invalidated when the value of the key is registered or changed
+  public SwitchPoint switchPoint(String key) {
+    requireNonNull(key);
+    if (keySwitchPointMap == null) {
+      keySwitchPointMap = new HashMap<>();  // lazy allocate
+    }
+    return keySwitchPointMap.computeIfAbsent(key, _ -> new SwitchPoint());
+  }
   public Object layout() {
     return layout;
   }
@@ -122,6 +191,11 @@ public final class JSObject {
   public Object fastAccess(int slot) {
     return array[slot];
   }
+  public void fastWrite(int slot, Object value) {
+    requireNonNull(value);
+    array[slot] = value;
+    invalidateSwitchPoints(layout.keys[slot]);
+  }
 
   public Object invoke(Object receiver, Object... args) {
     //System.err.println("invoke " + this + " " + receiver + " " + java.util.Arrays.toString(args));
@@ -165,11 +239,17 @@ public final class JSObject {
       array = Arrays.copyOf(array, array.length + 1);
       array[array.length - 1] = value;
     }
+    invalidateSwitchPoints(key);
+  }
 
+  private void invalidateSwitchPoints(String key) {
     if (switchPoint != null) {
       SwitchPoint.invalidateAll(new SwitchPoint[]{ switchPoint });
+      switchPoint = null;
+    }
+    if (keySwitchPointMap != null && keySwitchPointMap.remove(key) instanceof SwitchPoint keySwitchPoint) {
+      SwitchPoint.invalidateAll(new SwitchPoint[]{ keySwitchPoint });
     }
-    switchPoint = null;
   }
   
   public int length() {
@@ -16,16 +16,21 @@ import static fr.umlv.smalljs.stackinterp.Instructions.REGISTER;
 import static fr.umlv.smalljs.stackinterp.Instructions.RET;
 import static fr.umlv.smalljs.stackinterp.Instructions.STORE;
 import static fr.umlv.smalljs.stackinterp.Instructions.SWAP;
+import static fr.umlv.smalljs.stackinterp.Instructions.TAILCALL;
 import static fr.umlv.smalljs.stackinterp.TagValues.encodeDictObject;
 import static fr.umlv.smalljs.stackinterp.TagValues.encodeSmallInt;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import fr.umlv.smalljs.ast.Expr;
 import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Break;
 import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Continue;
 import fr.umlv.smalljs.ast.Expr.FieldAccess;
 import fr.umlv.smalljs.ast.Expr.FieldAssignment;
 import fr.umlv.smalljs.ast.Expr.Fun;
@@ -33,6 +38,7 @@ import fr.umlv.smalljs.ast.Expr.Identifier;
 import fr.umlv.smalljs.ast.Expr.If;
 import fr.umlv.smalljs.ast.Expr.Statement;
 import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Loop;
 import fr.umlv.smalljs.ast.Expr.MethodCall;
 import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
 import fr.umlv.smalljs.ast.Expr.Return;
@@ -42,8 +48,12 @@ import fr.umlv.smalljs.rt.JSObject;
 
 final class InstrRewriter {
 	static final class InstrBuffer {
+		// the placeholders of the GOTOs of the breaks and the continues of a loop
+		private record LoopJumps(List<Integer> breakPlaceholders, List<Integer> continuePlaceholders) {}
+
 		private int[] instrs;
 		private int size;
+		private final ArrayDeque<LoopJumps> loops = new ArrayDeque<>();
 
 		InstrBuffer() {
 			instrs = new int[32];
@@ -62,13 +72,42 @@ final class InstrRewriter {
 		}
 
 		int placeholder() {
-			return size++;
+			emit(0);
+			return size - 1;
 		}
 
 		void patch(int position, int label) {
 			instrs[position] = label;
 		}
 
+		// starts the body of a loop, the breaks and the continues jump to the innermost loop
+		void enterLoop() {
+			loops.push(new LoopJumps(new ArrayList<>(), new ArrayList<>()));
+		}
+
+		void emitBreak() {
+			emit(GOTO);
+			loops.element().breakPlaceholders.add(placeholder());
+		}
+
+		void emitContinue() {
+			emit(GOTO);
+			loops.element().continuePlaceholders.add(placeholder());
+		}
+
+		void patchContinues(int label) {
+			for (var placeholder : loops.element().continuePlaceholders) {
+				patch(placeholder, label);
+			}
+		}
+
+		// ends the loop, the breaks jump to the label
+		void exitLoop(int label) {
+			for (var placeholder : loops.pop().breakPlaceholders) {
+				patch(placeholder, label);
+			}
+		}
+
 		int[] toInstrs() {
 			return Arrays.copyOf(instrs, size);
 		}
@@ -113,13 +152,30 @@ final class InstrRewriter {
 				visitVariable(trueBlock, env);
 				visitVariable(falseBlock, env);
 			}
+			case Loop(_, Block body, Block update, _, _) -> {
+				visitVariable(body, env);
+				visitVariable(update, env);
+			}
 			case Literal _, Call _, Identifier _, Fun _, Return _, ObjectLiteral _, FieldAccess _,
-					 FieldAssignment _, MethodCall _ -> {
+					 FieldAssignment _, MethodCall _, Break _, Continue _ -> {
 				// do nothing
 			}
 		};
 	}
 
+	private static void visitCall(Call call, int opcode, JSObject env, InstrBuffer buffer, Dictionary dict) {
+		// visit the qualifier
+		visit(call.qualifier(), env, buffer, dict);
+		// emit undefined
+		buffer.emit(CONST).emit(encodeDictObject(UNDEFINED, dict));
+		// visit all arguments
+		for (var arg : call.args()) {
+			visit(arg, env, buffer, dict);
+		}
+		// emit the funcall or the tail call
+		buffer.emit(opcode).emit(call.args().size());
+	}
+
 	private static void visit(Expr expression, JSObject env, InstrBuffer buffer, Dictionary dict) {
 		switch (expression) {
 			case Block(List<Expr> exprs, int lineNumber) -> {
@@ -144,18 +200,7 @@ final class InstrRewriter {
 				    buffer.emit(CONST).emit(encodeDictObject(literalValue, dict));
 				}
 			}
-			case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
-				// visit the qualifier
-				visit(qualifier, env, buffer, dict);
-				// emit undefined
-				buffer.emit(CONST).emit(encodeDictObject(UNDEFINED, dict));
-				// visit all arguments
-				for (var arg : args) {
-                    visit(arg, env, buffer, dict);
-				}
-				// emit the funcall
-				buffer.emit(FUNCALL).emit(args.size());
-			}
+			case Call call -> visitCall(call, FUNCALL, env, buffer, dict);
 			case Identifier(String name, int lineNumber) -> {
 				// find if there is a local variable in the environment with the name
 				var slot = env.lookupOrDefault(name, null);
@@ -189,6 +234,11 @@ final class InstrRewriter {
 				  buffer.emit(REGISTER).emit(encodeDictObject(name, dict));
 				}
 			}
+			case Return ret when ret.tailCall() -> {
+				// emit a tail call, the RET returns the result of a native function
+				visitCall((Call) ret.expr(), TAILCALL, env, buffer, dict);
+				buffer.emit(RET);
+			}
 			case Return(Expr expr, int lineNumber) -> {
 				// emit a visit of the expression
 				visit(expr, env, buffer, dict);
@@ -211,6 +261,31 @@ final class InstrRewriter {
 				// patch the second placeholder
 				buffer.patch(endPlaceHolder, buffer.label());
 			}
+			case Loop(Expr condition, Block body, Block update, boolean testFirst, int lineNumber) -> {
+				var start = buffer.label();
+				var exitPlaceHolder = -1;
+				if (testFirst) {
+					// visit the condition and exit if false
+					visit(condition, env, buffer, dict);
+					exitPlaceHolder = buffer.emit(JUMP_IF_FALSE).placeholder();
+				}
+				// visit the body, a continue jumps to the update
+				buffer.enterLoop();
+				visit(body, env, buffer, dict);
+				buffer.patchContinues(buffer.label());
+				visit(update, env, buffer, dict);
+				if (!testFirst) {
+					visit(condition, env, buffer, dict);
+					exitPlaceHolder = buffer.emit(JUMP_IF_FALSE).placeholder();
+				}
+				// jump back to the start
+				buffer.emit(GOTO).emit(start);
+				// patch the exit and the breaks
+				buffer.patch(exitPlaceHolder, buffer.label());
+				buffer.exitLoop(buffer.label());
+			}
+			case Break _ -> buffer.emitBreak();
+			case Continue _ -> buffer.emitContinue();
 			case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
 				// create a JSObject class
 				var clazz = JSObject.newObject(null);
@@ -16,12 +16,13 @@ interface Instructions {
 	int NEW = 13; // NEW dictionary_index (JSObject object)
 	int GET = 14; // GET dictionary_index (String field_name)
 	int PUT = 15; // PUT dictionary_index (String field_name)
+	int TAILCALL = 16; // TAILCALL argument_count (a FUNCALL that reuses the frame of the current function)
 
 	int PRINT = 20;
 
 	static void dump(int[] instrs, Dictionary dict) {
 		var strings = new String[] { null, "CONST", "LOOKUP", "REGISTER", "LOAD", "STORE", "DUP", "POP", "SWAP",
-				"FUNCALL", "RET", "GOTO", "JUMP_IF_FALSE", "NEW", "GET", "PUT", null, null, null, null, "PRINT" };
+				"FUNCALL", "RET", "GOTO", "JUMP_IF_FALSE", "NEW", "GET", "PUT", "TAILCALL", null, null, null, "PRINT" };
 		for (var pc = 0; pc < instrs.length;) {
 			System.err.print(pc + " ");
 			var instr = instrs[pc++];
@@ -31,7 +32,7 @@ interface Instructions {
 					System.err.println(strings[instr]);
 				}
 				// int arg instr
-				case LOAD, STORE, GOTO, JUMP_IF_FALSE, FUNCALL -> {
+				case LOAD, STORE, GOTO, JUMP_IF_FALSE, FUNCALL, TAILCALL -> {
 					var operand = instrs[pc++];
 					System.err.println(strings[instr] + " " + operand);
 				}
@@ -10,6 +10,7 @@ import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import fr.umlv.smalljs.ast.Optimizer;
 import fr.umlv.smalljs.ast.Script;
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
@@ -75,6 +76,17 @@ public final class StackInterpreter {
     private static final int QUALIFIER_BASE_ARG_OFFSET = -2;
     private static final int FUNCALL_PREFIX = 2;
 
+    // calls a function without code, the receiver and the arguments are on the stack
+    private static int invokeNative(JSObject function, int[] stack, int baseArg, int argumentCount, Dictionary dict, int[] heap) {
+        // decode receiver
+        var receiver = decodeAnyValue(stack[baseArg + RECEIVER_BASE_ARG_OFFSET], dict, heap);
+        var args = new Object[argumentCount];
+        for (var i = 0; i < argumentCount; i++) {
+            args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
+        }
+        return encodeAnyValue(function.invoke(receiver, args), dict);
+    }
+
     public static Object execute(JSObject function, Dictionary dict, JSObject globalEnv) {
         var stack = new int[96 /* 4096 */];
         var heap = new int[96 /* 4096 */];
@@ -183,13 +195,7 @@ public final class StackInterpreter {
                     // check if the function contains a code attribute
                     var maybeCode = newFunction.lookupOrDefault("__code__", null);
                     if (maybeCode == null) { // native call !
-                        // decode receiver
-                        var receiver = decodeAnyValue(stack[baseArg+RECEIVER_BASE_ARG_OFFSET], dict, heap);
-                        var args = new Object[argumentCount];
-                        for (var i = 0; i < argumentCount; i++) {
-                            args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
-                        }
-                        var result = encodeAnyValue(newFunction.invoke(receiver, args), dict);
+                        var result = invokeNative(newFunction, stack, baseArg, argumentCount, dict, heap);
                         sp = baseArg - FUNCALL_PREFIX;
                         push(stack, sp++, result);
                         continue;
@@ -228,6 +234,53 @@ public final class StackInterpreter {
                     instrs = code.instrs();
 
                 }
+                case Instructions.TAILCALL -> {
+                    // the frame of the current function is reused by the callee,
+                    // so a recursive tail call runs in constant stack space
+                    var argumentCount = instrs[pc++];
+                    var baseArg = sp - argumentCount;
+                    var qualifier = decodeAnyValue(stack[baseArg + QUALIFIER_BASE_ARG_OFFSET], dict, heap);
+                    if (!(qualifier instanceof JSObject newFunction)) {
+                        throw new Failure("can't call non function " + qualifier);
+                    }
+                    var maybeCode = newFunction.lookupOrDefault("__code__", null);
+                    if (maybeCode == null) { // native call, the result is returned by the next RET
+                        var result = invokeNative(newFunction, stack, baseArg, argumentCount, dict, heap);
+                        sp = baseArg - FUNCALL_PREFIX;
+                        push(stack, sp++, result);
+                        continue;
+                    }
+                    if (!(maybeCode instanceof Code newCode)) {
+                        throw new Failure("invalid code attribute in function " + newFunction.name());
+                    }
+                    // check number of arguments
+                    if (newCode.parameterCount() != argumentCount + 1/* this */) {
+                        throw new Failure("wrong number of arguments for " + newFunction.name() + " expected "
+                                + (newCode.parameterCount() - 1) + " but was " + argumentCount);
+                    }
+                    // the caller of the current function is the caller of the callee
+                    var activation = bp + code.slotCount();
+                    var savedBp = stack[activation + BP_OFFSET];
+                    var savedPc = stack[activation + PC_OFFSET];
+                    var savedFun = stack[activation + FUN_OFFSET];
+
+                    // move the receiver and the arguments to the slots of the current function
+                    System.arraycopy(stack, baseArg + RECEIVER_BASE_ARG_OFFSET, stack, bp, argumentCount + 1);
+                    // initialize the local variables
+                    for (var i = bp + newCode.parameterCount(); i < bp + newCode.slotCount(); i++) {
+                        stack[i] = undefined;
+                    }
+                    var newActivation = bp + newCode.slotCount();
+                    stack[newActivation + BP_OFFSET] = savedBp;
+                    stack[newActivation + PC_OFFSET] = savedPc;
+                    stack[newActivation + FUN_OFFSET] = savedFun;
+
+                    pc = 0;
+                    sp = newActivation + ACTIVATION_SIZE;
+                    code = newCode;
+                    function = newFunction;
+                    instrs = code.instrs();
+                }
                 case Instructions.RET -> {
                     int result = pop(stack, --sp);
                     int activation = bp + code.slotCount();
@@ -365,7 +418,7 @@ public final class StackInterpreter {
 
     public static void interpret(Script script, PrintStream outStream) {
         var globalEnv = createGlobalEnv(outStream);
-        var body = script.body();
+        var body = Optimizer.optimize(script).body();
         var dictionary = new Dictionary();
         var function = InstrRewriter.createFunction("main", List.of(), body, dictionary);
         execute(function, dictionary, globalEnv);
@@ -0,0 +1,106 @@
+package fr.umlv.smalljs.ast;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class InlinerTest {
+  private static Expr.Block body(String code) {
+    return createScript(code).body();
+  }
+
+  private static Expr.Block inline(String code) {
+    return Inliner.inline(body(code));
+  }
+
+  @Test
+  public void inlineASmallFunction() {
+    assertEquals(body("function sq(a) { return a * a; } print(3 * 3);"),
+        inline("function sq(a) { return a * a; } print(sq(3));"));
+  }
+
+  @Test
+  public void inlineInAFunction() {
+    assertEquals(body("function sq(a) { return a * a; } function f(x) { return x * x; }"),
+        inline("function sq(a) { return a * a; } function f(x) { return sq(x); }"));
+  }
+
+  @Test
+  public void inlineAFunctionThatCallsAnInlinedFunction() {
+    assertEquals(body("function sq(a) { return a * a; } function f(b) { return b * b + 1; } print(2 * 2 + 1);"),
+        inline("function sq(a) { return a * a; } function f(b) { return sq(b) + 1; } print(f(2));"));
+  }
+
+  @Test
+  public void inlineAnArgumentWithoutSideEffectUsedOnce() {
+    assertEquals(body("function inc(a) { return a + 1; } print(b * 2 + 1);"),
+        inline("function inc(a) { return a + 1; } print(inc(b * 2));"));
+  }
+
+  @Test
+  public void doNotDuplicateAnArgument() {
+    assertEquals(body("function sq(a) { return a * a; } print(sq(b + 1)); print(sq(g()));"),
+        inline("function sq(a) { return a * a; } print(sq(b + 1)); print(sq(g()));"));
+  }
+
+  @Test
+  public void doNotDropAnArgumentOfAnUnusedParameter() {
+    assertEquals(body("function one(a) { return 1; } print(one(undefinedVar)); print(one(b + 1)); print(1);"),
+        inline("function one(a) { return 1; } print(one(undefinedVar)); print(one(b + 1)); print(one(2));"));
+  }
+
+  @Test
+  public void doNotInlineAFieldAccessArgument() {
+    assertEquals(body("function inc(a) { return a + 1; } print(inc(o.x)); print(b + 1);"),
+        inline("function inc(a) { return a + 1; } print(inc(o.x)); print(inc(b));"));
+  }
+
+  @Test
+  public void doNotEvaluateAVariableAfterASideEffect() {
+    assertEquals(body("function f(a) { return g() + a; } print(f(b)); print(g() + 1);"),
+        inline("function f(a) { return g() + a; } print(f(b)); print(f(1));"));
+  }
+
+  @Test
+  public void doNotInlineARecursiveFunction() {
+    assertEquals(body("function f(n) { return f(n); } print(f(1));"),
+        inline("function f(n) { return f(n); } print(f(1));"));
+  }
+
+  @Test
+  public void doNotInlineARedefinedFunction() {
+    assertEquals(body("function f(a) { return a; } f = print; print(f(1));"),
+        inline("function f(a) { return a; } f = print; print(f(1));"));
+  }
+
+  @Test
+  public void doNotInlineACallBeforeTheDeclaration() {
+    assertEquals(body("print(f(1)); function f(a) { return a; }"),
+        inline("print(f(1)); function f(a) { return a; }"));
+  }
+
+  @Test
+  public void doNotInlineAFunctionWithMoreThanAReturn() {
+    assertEquals(body("function f(a) { var b = a; return b; } print(f(1));"),
+        inline("function f(a) { var b = a; return b; } print(f(1));"));
+  }
+
+  @Test
+  public void doNotInlineIfAGlobalIsShadowed() {
+    assertEquals(body("function g(a) { return k + a; } function f(k) { return g(k); }"),
+        inline("function g(a) { return k + a; } function f(k) { return g(k); }"));
+  }
+
+  @Test
+  public void doNotInlineAFunctionThatUsesThis() {
+    assertEquals(body("function f(a) { return this; } print(f(1));"),
+        inline("function f(a) { return this; } print(f(1));"));
+  }
+
+  @Test
+  public void inlineThenFold() {
+    assertEquals(createScript("function sq(a) { return a * a; } print(9);"),
+        Optimizer.optimize(createScript("function sq(a) { return a * a; } print(sq(3));")));
+  }
+}
@@ -0,0 +1,90 @@
+package fr.umlv.smalljs.ast;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class OptimizerTest {
+  private static Script optimize(String code) {
+    return Optimizer.optimize(createScript(code));
+  }
+
+  @Test
+  public void foldArithmeticOperators() {
+    assertEquals(createScript("print(14);"), optimize("print(2 + 3 * 4);"));
+  }
+
+  @Test
+  public void foldArithmeticOperatorsInAFunction() {
+    assertEquals(createScript("function f(a) { return a + 6; }"),
+        optimize("function f(a) { return a + (2 * 3); }"));
+  }
+
+  @Test
+  public void doNotFoldADivisionByZero() {
+    assertEquals(createScript("print(1 / 0);"), optimize("print(1 / 0);"));
+  }
+
+  @Test
+  public void doNotFoldTheValueOfAComparison() {
+    // 1 or 0 for the interpreters, a boolean for the JVM backend
+    assertEquals(createScript("print(1 < 2);"), optimize("print(1 < 2);"));
+  }
+
+  @Test
+  public void removeTheFalseBranch() {
+    assertEquals(createScript("print(1); print(3);"),
+        optimize("if (1 < 2) { print(1); } else { print(2); } print(3);"));
+  }
+
+  @Test
+  public void removeTheTrueBranch() {
+    assertEquals(createScript("print(2);"),
+        optimize("if (2 + 1 <= 2) { print(1); } else { print(2); }"));
+  }
+
+  @Test
+  public void removeTheFalseBranchOfANonZeroLiteral() {
+    assertEquals(createScript("print(1);"), optimize("if ('hello') { print(1); }"));
+  }
+
+  @Test
+  public void keepAnIfOnZero() {
+    // 0 is false for the interpreters but true for the JVM backend
+    assertEquals(createScript("if (0) { print(1); }"), optimize("if (0) { print(1); }"));
+  }
+
+  @Test
+  public void keepAnIfOnUndefined() {
+    // undefined is true for the interpreters but false for the JVM backend
+    assertEquals(createScript("if (undefined) { print(1); } else { print(2); }"),
+        optimize("if (undefined) { print(1); } else { print(2); }"));
+  }
+
+  @Test
+  public void keepABranchThatDeclaresAVariable() {
+    assertEquals(createScript("if (2 < 1) { var a = 1; } print(a);"),
+        optimize("if (2 < 1) { var a = 1; } print(a);"));
+  }
+
+  @Test
+  public void removeExpressionStatementsWithoutSideEffect() {
+    assertEquals(createScript("print(4);"), optimize("1; 2 + 3; 'hello'; ({ x: 1 }); print(4);"));
+  }
+
+  @Test
+  public void keepExpressionStatementsWithSideEffect() {
+    assertEquals(createScript("a; print(4); a.b;"), optimize("a; print(4); a.b;"));
+  }
+
+  @Test
+  public void removeAWhileThatIsNeverExecuted() {
+    assertEquals(createScript("print(3);"), optimize("while (2 < 1) { print(1); } print(3);"));
+  }
+
+  @Test
+  public void keepADoWhileThatIsExecutedOnce() {
+    assertEquals(createScript("do { print(1); } while (2 < 1);"), optimize("do { print(1); } while (2 < 1);"));
+  }
+}
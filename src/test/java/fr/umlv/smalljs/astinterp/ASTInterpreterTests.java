@@ -286,6 +286,29 @@ public class ASTInterpreterTests {
               """));
     }
 
+    @Test
+    public void callAUserDefinedFunctionVarsInitializedAtEachCall() {
+      assertEquals("undefined\nundefined\n", execute("""
+              function f(x) {
+                print(a);
+                var a = x;
+              }
+              f(1);
+              f(2);
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionWithTheSameParameterTwice() {
+      assertEquals("2 undefined\n", execute("""
+              function f(x, x) {
+                print(x, a);
+                var a = 0;
+              }
+              f(1, 2);
+              """));
+    }
+
     @Test
     public void callAUserDefinedFunctionWithAnIfAndAVariable() {
       assertEquals("0\n7\n", execute("""
@@ -301,6 +324,96 @@ public class ASTInterpreterTests {
               print(f(7));
               """));
     }
+
+    @Test
+    public void printWithAWhile() {
+      assertEquals("0\n1\n2\n", execute("""
+              var i = 0;
+              while (i < 3) {
+                print(i);
+                i = i + 1;
+              }
+              """));
+    }
+
+    @Test
+    public void printWithADoWhile() {
+      assertEquals("5\n", execute("""
+              var i = 5;
+              do {
+                print(i);
+                i = i + 1;
+              } while (i < 3);
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionWithAFor() {
+      assertEquals("45\n", execute("""
+              function sum(n) {
+                var s = 0;
+                for (var i = 0; i < n; i = i + 1) {
+                  s = s + i;
+                }
+                return s;
+              }
+              print(sum(10));
+              """));
+    }
+
+    @Test
+    public void printWithAForAndABreakAndAContinue() {
+      assertEquals("0\n1\n3\n", execute("""
+              for (var i = 0; i < 10; i = i + 1) {
+                if (i == 2) {
+                  continue;
+                }
+                if (i == 4) {
+                  break;
+                }
+                print(i);
+              }
+              """));
+    }
+
+    @Test
+    public void printWithNestedFors() {
+      assertEquals("0\n10\n11\n20\n21\n22\n", execute("""
+              for (var i = 0; i < 3; i = i + 1) {
+                for (var j = 0; j < 3; j = j + 1) {
+                  if (i < j) {
+                    break;
+                  }
+                  print(i * 10 + j);
+                }
+              }
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionThatReturnsFromALoop() {
+      assertEquals("7\n", execute("""
+              function root(n) {
+                var i = 0;
+                for (;;) {
+                  if (i * i == n) {
+                    return i;
+                  }
+                  i = i + 1;
+                }
+              }
+              print(root(49));
+              """));
+    }
+
+    @Test
+    public void breakOutsideALoop() {
+      assertThrows(UnsupportedOperationException.class, () -> execute("""
+              function f() {
+                break;
+              }
+              """));
+    }
   }
 
   @Nested
@@ -362,6 +475,181 @@ public class ASTInterpreterTests {
               print(f());
               """));
     }
+
+    @Test
+    public void callATailRecursiveFunction() {
+      assertEquals("100000\n", execute("""
+              function count(n, acc) {
+                if (n < 1) {
+                  return acc;
+                } else {
+                  return count(n - 1, acc + 1);
+                }
+              }
+              print(count(100000, 0));
+              """));
+    }
+
+    @Test
+    public void callMutuallyTailRecursiveFunctions() {
+      assertEquals("odd\n", execute("""
+              function even(n) {
+                if (n < 1) {
+                  return 'even';
+                } else {
+                  return odd(n - 1);
+                }
+              }
+              function odd(n) {
+                if (n < 1) {
+                  return 'odd';
+                } else {
+                  return even(n - 1);
+                }
+              }
+              print(even(100001));
+              """));
+    }
+
+    @Test
+    public void callATailRecursiveFunctionThatIsRedefined() {
+      assertEquals("20\n", execute("""
+              function f(n) {
+                if (n < 1) {
+                  return 'f';
+                } else {
+                  return f(n - 1);
+                }
+              }
+              var g = f;
+              function f(n) { return n * 10; }
+              print(g(3));
+              """));
+    }
+
+    @Test
+    public void callAnOperatorWithIntsThenStrings() {
+      assertEquals("1\n0\n1\n0\n", execute("""
+              function eq(a, b) {
+                return a == b;
+              }
+              print(eq(1, 1));
+              print(eq(1, 2));
+              print(eq('a', 'a'));
+              print(eq(1, 'a'));
+              """));
+    }
+
+    @Test
+    public void callAClosureThatAssignsAnEnclosingVariable() {
+      assertEquals("1\n2\n", execute("""
+              function counter() {
+                var count = 0;
+                return function() {
+                  count = count + 1;
+                  return count;
+                };
+              }
+              var c = counter();
+              print(c());
+              print(c());
+              """));
+    }
+
+    @Test
+    public void callAClosureCreatedBeforeTheVariableIsAssigned() {
+      assertEquals("3\n", execute("""
+              function f() {
+                var g = function() {
+                  return a;
+                };
+                var a = 3;
+                return g();
+              }
+              print(f());
+              """));
+    }
+
+    @Test
+    public void callAClosureThatCapturesThroughAnIntermediateFunction() {
+      assertEquals("7\n", execute("""
+              function f(a) {
+                return function() {
+                  return function() {
+                    return a;
+                  };
+                };
+              }
+              print(f(7)()());
+              """));
+    }
+
+    @Test
+    public void callAClosureThatCapturesItsParametersFromTheSameCallSite() {
+      // the arguments are evaluated directly into the frame of capture, a is captured as is,
+      // b is assigned so it is boxed, each call must have its own values
+      assertEquals("11\n22\n33\n", execute("""
+              function capture(a, b) {
+                b = b * 10;
+                return function() {
+                  return a + b;
+                };
+              }
+              function make(n) {
+                var f = capture(n, n);
+                return f;
+              }
+              var f1 = make(1);
+              var f2 = make(2);
+              var f3 = make(3);
+              print(f1());
+              print(f2());
+              print(f3());
+              """));
+    }
+
+    @Test
+    public void callARecursiveNestedFunction() {
+      assertEquals("10\n", execute("""
+              function f(n) {
+                function g(x) {
+                  if (x < 1) {
+                    return 0;
+                  }
+                  return x + g(x - 1);
+                }
+                return g(n);
+              }
+              print(f(4));
+              """));
+    }
+
+    @Test
+    public void callAFunctionThatAssignsAGlobal() {
+      assertEquals("3\n", execute("""
+              var count = 0;
+              function inc() {
+                count = count + 1;
+              }
+              inc();
+              inc();
+              inc();
+              print(count);
+              """));
+    }
+
+    @Test
+    public void callANestedFunction() {
+      assertEquals("6\n", execute("""
+              function f(a) {
+                function g(b) {
+                  return a * b;
+                }
+                return g(2) + g(1);
+              }
+              print(f(2));
+              """));
+    }
   }
 
   @Nested
@@ -430,6 +718,25 @@ public class ASTInterpreterTests {
                   """));
     }
 
+    @Test
+    public void objectGetAFieldOfObjectsWithDifferentLayouts() {
+      assertEquals(
+          "1\n2\n3\n4\n5\n6\n1\n",
+          execute("""
+                  function getX(o) {
+                    return o.x;
+                  }
+                  var o1 = { x: 1 };
+                  print(getX(o1));
+                  print(getX({ a: 0, x: 2 }));
+                  print(getX({ b: 0, x: 3 }));
+                  print(getX({ c: 0, x: 4 }));
+                  print(getX({ d: 0, x: 5 }));
+                  print(getX({ e: 0, x: 6 }));
+                  print(getX(o1));
+                  """));
+    }
+
     @Test
     public void objectGetAFieldNoValue() {
       assertEquals(
@@ -0,0 +1,62 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import com.sun.management.ThreadMXBean;
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+// measure the bytes allocated per call by the AST interpreter, for function calls and method calls,
+// not a test, run it with its main method
+public class CallAllocationBenchmark {
+  private static final int CALLS = 242_785;  // number of calls to f, 2 * fibo(25) - 1
+
+  private static final String FUNCTION_CALLS = """
+      function f(n) {
+        if (n < 2) {
+          return 1;
+        }
+        return f(n - 1) + f(n - 2);
+      }
+      print(f(25));
+      """;
+  private static final String METHOD_CALLS = """
+      var o = {
+        f: function(n) {
+          if (n < 2) {
+            return 1;
+          }
+          return this.f(n - 1) + this.f(n - 2);
+        }
+      };
+      print(o.f(25));
+      """;
+
+  private static void run(String name, Script script) {
+    var threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    var bytes = threadMXBean.getCurrentThreadAllocatedBytes();
+    var start = System.nanoTime();
+    ASTInterpreter.interpret(script, new PrintStream(OutputStream.nullOutputStream()));
+    var end = System.nanoTime();
+    var allocated = threadMXBean.getCurrentThreadAllocatedBytes() - bytes;
+    System.out.printf("%-16s %6d ms %10d KB %6d bytes/call%n", name, (end - start) / 1_000_000, allocated / 1024,
+        allocated / CALLS);
+  }
+
+  public static void main(String[] args) {
+    var functionCalls = createScript(FUNCTION_CALLS);
+    var methodCalls = createScript(METHOD_CALLS);
+    var err = System.err;  // print() of the AST interpreter logs on System.err
+    System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      for (var round = 0; round < 10; round++) {
+        run("function calls", functionCalls);
+        run("method calls", methodCalls);
+      }
+    } finally {
+      System.setErr(err);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Script;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+// measure the memory retained by closures created by the AST interpreter,
+// each closure only uses a parameter of the function that creates it but that function has other
+// local variables, the heap is measured before the closures are created then while they are all alive,
+// not a test, run it with its main method
+public class ClosureRetentionBenchmark {
+  private static final int CLOSURES = 2_000;
+
+  private static final String SCRIPT = """
+      function make(n) {
+        var o1 = { a: n, b: n, c: n, d: n };
+        var o2 = { a: o1, b: n, c: n, d: n };
+        return function() { return n; };
+      }
+      function build(n, list) {
+        if (n == 0) {
+          return list;
+        }
+        return build(n - 1, { f: make(n), next: list });
+      }
+      print("start");
+      var list = build(%d, 0);
+      print("alive");
+      print(list.f());
+      """.formatted(CLOSURES);
+
+  // collects until the used heap does not decrease anymore
+  private static long usedHeap() {
+    var memoryBean = ManagementFactory.getMemoryMXBean();
+    var used = Long.MAX_VALUE;
+    for (;;) {
+      System.gc();
+      var current = memoryBean.getHeapMemoryUsage().getUsed();
+      if (current >= used) {
+        return used;
+      }
+      used = current;
+    }
+  }
+
+  private static void measure(Script script) {
+    var out = new PrintStream(OutputStream.nullOutputStream()) {
+      private long start;
+
+      @Override
+      public void println(String message) {
+        if (message.equals("start")) {
+          start = usedHeap();
+        }
+        if (message.equals("alive")) {
+          var retained = usedHeap() - start;
+          System.out.printf("%d closures %8d KB %6d bytes/closure%n", CLOSURES, retained / 1024,
+              retained / CLOSURES);
+        }
+      }
+    };
+    ASTInterpreter.interpret(script, out);
+  }
+
+  // the retained memory does not depend on the warmup, so there is only one measure,
+  // in the same VM, the following measures are not reliable
+  public static void main(String[] args) throws InterruptedException {
+    var script = createScript(SCRIPT);
+    var err = System.err;  // print() of the AST interpreter logs on System.err
+    System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      // the script builds the list recursively so it needs a large stack
+      var thread = new Thread(null, () -> measure(script), "benchmark", 1L << 30);
+      thread.start();
+      thread.join();
+    } finally {
+      System.setErr(err);
+    }
+  }
+}
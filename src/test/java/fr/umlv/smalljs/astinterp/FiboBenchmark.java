@@ -0,0 +1,35 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// measure the time of fibo with the AST interpreter,
+// not a test, run it with its main method
+public class FiboBenchmark {
+  public static void main(String[] args) {
+    var n = args.length == 0 ? 25 : Integer.parseInt(args[0]);
+    var script = createScript("""
+        function fibo(n) {
+          if (n < 2) {
+            return 1;
+          }
+          return fibo(n - 1) + fibo(n - 2);
+        }
+        print(fibo(%d));
+        """.formatted(n));
+    var err = System.err;  // print() of the AST interpreter logs on System.err
+    System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      for (var round = 0; round < 20; round++) {
+        var start = System.nanoTime();
+        ASTInterpreter.interpret(script, new PrintStream(OutputStream.nullOutputStream()));
+        var end = System.nanoTime();
+        System.out.println("fibo(" + n + ") " + (end - start) / 1_000_000 + " ms");
+      }
+    } finally {
+      System.setErr(err);
+    }
+  }
+}
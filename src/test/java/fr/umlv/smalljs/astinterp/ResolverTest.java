@@ -0,0 +1,104 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.astinterp.Resolver.Address;
+import org.junit.jupiter.api.Test;
+
+public class ResolverTest {
+  @Test
+  public void parametersAndLocalVariables() {
+    var body = createScript("""
+        function f(a, b) {
+          var c = a + b;
+          return c;
+        }
+        """).body();
+    var resolver = Resolver.resolve(body);
+    var fun = (Fun) body.exprs().getFirst();
+    var exprs = fun.body().exprs();
+    var assignment = (VarAssignment) exprs.get(0);
+    var sum = (Call) assignment.expr();
+    var ret = (Return) exprs.get(1);
+    var funInfo = resolver.funInfo(fun);
+    assertEquals(6, funInfo.frameSize());
+    assertArrayEquals(new int[0], funInfo.cellSlots());
+    assertArrayEquals(new Address[0], funInfo.captureSources());
+    assertNull(resolver.address(sum.qualifier()));  // + is a global
+    assertEquals(new Address(false, 3, false), resolver.address(sum.args().get(0)));
+    assertEquals(new Address(false, 4, false), resolver.address(sum.args().get(1)));
+    assertEquals(new Address(false, 5, false), resolver.address(assignment));
+    assertEquals(new Address(false, 5, false), resolver.address(ret.expr()));
+  }
+
+  @Test
+  public void capturedParameter() {
+    var body = createScript("""
+        var g = 1;
+        function f(a, b) {
+          return function(c) {
+            return a + g;
+          };
+        }
+        """).body();
+    var resolver = Resolver.resolve(body);
+    var fun = (Fun) body.exprs().get(1);
+    var inner = (Fun) ((Return) fun.body().exprs().getFirst()).expr();
+    var sum = (Call) ((Return) inner.body().exprs().getFirst()).expr();
+    var innerInfo = resolver.funInfo(inner);
+    assertEquals(4, innerInfo.frameSize());
+    // only a is captured, by value because it is never assigned
+    assertArrayEquals(new Address[] { new Address(false, 3, false) }, innerInfo.captureSources());
+    assertArrayEquals(new int[0], resolver.funInfo(fun).cellSlots());
+    assertEquals(new Address(true, 0, false), resolver.address(sum.args().get(0)));
+    assertNull(resolver.address(sum.args().get(1)));
+  }
+
+  @Test
+  public void capturedAssignedVariable() {
+    var body = createScript("""
+        function counter() {
+          var count = 0;
+          return function() {
+            count = count + 1;
+            return count;
+          };
+        }
+        """).body();
+    var resolver = Resolver.resolve(body);
+    var fun = (Fun) body.exprs().getFirst();
+    var declaration = (VarAssignment) fun.body().exprs().getFirst();
+    var inner = (Fun) ((Return) fun.body().exprs().get(1)).expr();
+    var assignment = (VarAssignment) inner.body().exprs().getFirst();
+    assertArrayEquals(new int[] { 3 }, resolver.funInfo(fun).cellSlots());
+    assertEquals(new Address(false, 3, true), resolver.address(declaration));
+    assertArrayEquals(new Address[] { new Address(false, 3, true) }, resolver.funInfo(inner).captureSources());
+    assertEquals(new Address(true, 0, true), resolver.address(assignment));
+  }
+
+  @Test
+  public void capturedThroughAnIntermediateFunction() {
+    var body = createScript("""
+        function f(a) {
+          return function() {
+            return function() {
+              return a;
+            };
+          };
+        }
+        """).body();
+    var resolver = Resolver.resolve(body);
+    var fun = (Fun) body.exprs().getFirst();
+    var middle = (Fun) ((Return) fun.body().exprs().getFirst()).expr();
+    var inner = (Fun) ((Return) middle.body().exprs().getFirst()).expr();
+    assertArrayEquals(new Address[] { new Address(false, 3, false) }, resolver.funInfo(middle).captureSources());
+    assertArrayEquals(new Address[] { new Address(true, 0, false) }, resolver.funInfo(inner).captureSources());
+  }
+}
@@ -0,0 +1,79 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// measure the classes loaded and the metaspace used to compile a script of 1,000 functions
+// with one compilation unit for the whole script (JVM engine) or one unit per function (tiered engine),
+// not a test, run it with its main method (-Xlog:class+unload to see the hidden classes being unloaded)
+public class ClassLoadingBenchmark {
+  private static final int FUNCTION_COUNT = 1_000;
+  private static final ByteCodeRewriter.Options OPTIONS = new ByteCodeRewriter.Options(false, null, null);
+
+  private static Script script() {
+    var functions = IntStream.range(0, FUNCTION_COUNT)
+        .mapToObj(i -> "function f" + i + "(a) {\n  var b = a + " + i + ";\n  return b;\n}\n")
+        .collect(Collectors.joining());
+    var calls = IntStream.range(0, FUNCTION_COUNT)
+        .mapToObj(i -> "f" + i + "(" + i + ");\n")
+        .collect(Collectors.joining());
+    return createScript(functions + calls);
+  }
+
+  private static long metaspaceUsed() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getName().equals("Metaspace"))
+        .mapToLong(pool -> pool.getUsage().getUsed())
+        .sum();
+  }
+
+  private static void measure(String name, Script script, Runnable compilation) {
+    var classLoading = ManagementFactory.getClassLoadingMXBean();
+    var classes = classLoading.getTotalLoadedClassCount();
+    var metaspace = metaspaceUsed();
+    var start = System.nanoTime();
+    compilation.run();
+    var end = System.nanoTime();
+    System.out.printf("%-18s %6d classes %8d KB metaspace %6d ms%n", name,
+        classLoading.getTotalLoadedClassCount() - classes,
+        (metaspaceUsed() - metaspace) / 1_024,
+        (end - start) / 1_000_000);
+  }
+
+  private static void unitPerScript(Script script) {
+    JVMInterpreter.interpret(script, new PrintStream(OutputStream.nullOutputStream()), OPTIONS);
+  }
+
+  private static void unitPerFunction(Script script) {
+    var globalEnv = JVMInterpreter.createGlobalEnv(new PrintStream(OutputStream.nullOutputStream()));
+    for (var expr : script.body().exprs()) {
+      if (expr instanceof Fun fun) {
+        ByteCodeRewriter.createFunction(fun.name(), fun.parameters(), fun.body(), globalEnv, OPTIONS);
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    if (ManagementFactory.getMemoryPoolMXBeans().stream().map(MemoryPoolMXBean::getName).noneMatch("Metaspace"::equals)) {
+      throw new IllegalStateException("no metaspace memory pool");
+    }
+    // load the classes of the runtime and of ASM before measuring
+    var warmup = createScript("function f(a) { var b = a + 1; return b; }\nf(1);\n");
+    unitPerScript(warmup);
+    unitPerFunction(warmup);
+
+    var script = script();
+    for (var round = 0; round < 3; round++) {
+      measure("unit per script", script, () -> unitPerScript(script));
+      measure("unit per function", script, () -> unitPerFunction(script));
+    }
+  }
+}
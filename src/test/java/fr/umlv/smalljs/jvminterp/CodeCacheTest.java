@@ -0,0 +1,109 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import fr.umlv.smalljs.ast.Expr.Fun;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CodeCacheTest {
+  private static Fun main(String code) {
+    var body = createScript(code).body();
+    return new Fun("main", List.of(), false, body, body.lineNumber());
+  }
+
+  private static String execute(String code, Path cacheDirectory) {
+    var script = createScript(code);
+    var outStream = new ByteArrayOutputStream(8192);
+    JVMInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8),
+        new ByteCodeRewriter.Options(false, null, cacheDirectory));
+    return outStream.toString(UTF_8).replace("\r\n", "\n");
+  }
+
+  private static List<Path> entries(Path cacheDirectory) throws IOException {
+    try(var stream = Files.list(cacheDirectory)) {
+      return stream.toList();
+    }
+  }
+
+  @Test
+  public void sameTreeSameKey() {
+    assertEquals(
+        CodeCache.key(1, main("print('hello');")),
+        CodeCache.key(1, main("print('hello');")));
+  }
+
+  @Test
+  public void differentTreeDifferentKey() {
+    var key = CodeCache.key(1, main("print(1);"));
+    assertNotEquals(key, CodeCache.key(1, main("print('1');")));
+    assertNotEquals(key, CodeCache.key(1, main("print(2);")));
+    assertNotEquals(key, CodeCache.key(1, main("\nprint(1);")));
+  }
+
+  @Test
+  public void differentCompilerVersionDifferentKey() {
+    assertNotEquals(
+        CodeCache.key(1, main("print('hello');")),
+        CodeCache.key(2, main("print('hello');")));
+  }
+
+  @Test
+  public void differentCompilerClassesDifferentHash() {
+    assertArrayEquals(
+        CodeCache.classHash(List.of(ByteCodeRewriter.class, RT.class)),
+        CodeCache.classHash(List.of(ByteCodeRewriter.class, RT.class)));
+    assertFalse(Arrays.equals(
+        CodeCache.classHash(List.of(ByteCodeRewriter.class, RT.class)),
+        CodeCache.classHash(List.of(ByteCodeRewriter.class))));
+  }
+
+  @Test
+  public void scriptIsReloadedFromTheCache(@TempDir Path cacheDirectory) throws IOException {
+    var code = """
+        function f(a) {
+          return a + 1;
+        }
+        print(f(41));
+        """;
+    assertEquals("42\n", execute(code, cacheDirectory));
+    var entries = entries(cacheDirectory);
+    assertEquals(1, entries.size());
+    var time = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(entries.getFirst(), time);
+
+    assertEquals("42\n", execute(code, cacheDirectory));
+    assertEquals(entries, entries(cacheDirectory));
+    assertEquals(time, Files.getLastModifiedTime(entries.getFirst()));
+  }
+
+  @Test
+  public void changedScriptIsNotReloaded(@TempDir Path cacheDirectory) throws IOException {
+    assertEquals("42\n", execute("""
+        function f(a) {
+          return a + 1;
+        }
+        print(f(41));
+        """, cacheDirectory));
+    assertEquals("40\n", execute("""
+        function f(a) {
+          return a - 1;
+        }
+        print(f(41));
+        """, cacheDirectory));
+    assertEquals(2, entries(cacheDirectory).size());
+  }
+}
@@ -0,0 +1,52 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Expr.Fun;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+// measure how many functions per second ByteCodeRewriter compiles in each mode of the compile pipeline,
+// not a test, run it with its main method
+public class CompileThroughputBenchmark {
+  private static double functionsPerSecond(List<Fun> funs, ByteCodeRewriter.Options options) {
+    var globalEnv = JVMInterpreter.createGlobalEnv(new PrintStream(OutputStream.nullOutputStream()));
+    var start = System.nanoTime();
+    for (var fun : funs) {
+      ByteCodeRewriter.createFunction(fun.name(), fun.parameters(), fun.body(), globalEnv, options);
+    }
+    var end = System.nanoTime();
+    return funs.size() * 1_000_000_000.0 / (end - start);
+  }
+
+  public static void main(String[] args) throws IOException {
+    var fun = (Fun) createScript("""
+        function f(n, o) {
+          var a = n * 2;
+          if (a < 10) {
+            print(o.x, a);
+          }
+          return o.foo(a + 1);
+        }
+        """).body().exprs().getFirst();
+    var funs = Collections.nCopies(2_000, fun);
+    var dumpDirectory = Files.createTempDirectory("smalljs-dump");
+
+    // debug prints the bytecode on System.err
+    var err = System.err;
+    System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      for (var round = 0; round < 3; round++) {
+        System.out.printf("default %10.0f functions/s%n", functionsPerSecond(funs, new ByteCodeRewriter.Options(false, null, null)));
+        System.out.printf("dump    %10.0f functions/s%n", functionsPerSecond(funs, new ByteCodeRewriter.Options(false, dumpDirectory, null)));
+        System.out.printf("debug   %10.0f functions/s%n", functionsPerSecond(funs, new ByteCodeRewriter.Options(true, null, null)));
+      }
+    } finally {
+      System.setErr(err);
+    }
+  }
+}
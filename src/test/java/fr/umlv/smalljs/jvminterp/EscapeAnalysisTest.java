@@ -0,0 +1,92 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import fr.umlv.smalljs.ast.Expr.Fun;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class EscapeAnalysisTest {
+  private static Map<String, Set<String>> scalarReplaceableObjects(String code) {
+    var fun = (Fun) createScript(code).body().exprs().getFirst();
+    return EscapeAnalysis.scalarReplaceableObjects(fun.parameters(), fun.body());
+  }
+
+  @Test
+  public void fieldAccessAndAssignment() {
+    var objectMap = scalarReplaceableObjects("""
+        function f(a) {
+          var p = { x: a, y: 2 };
+          p.z = p.x + p.y;
+          return p.z;
+        }
+        """);
+    assertEquals(Map.of("p", Set.of("x", "y", "z")), objectMap);
+    assertEquals(List.of("x", "y", "z"), List.copyOf(objectMap.get("p")));
+  }
+
+  @Test
+  public void escapeAsArgumentOrReturnOrAlias() {
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          var p = { x: 1 };
+          print(p);
+        }
+        """));
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          var p = { x: 1 };
+          return p;
+        }
+        """));
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          var p = { x: 1 };
+          var q = p;
+          return q.x;
+        }
+        """));
+  }
+
+  @Test
+  public void escapeAsThisOfAMethodCall() {
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          var p = { x: 1 };
+          return p.foo();
+        }
+        """));
+  }
+
+  @Test
+  public void assignedTwiceOrDeclaredInABlock() {
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          var p = { x: 1 };
+          p = { x: 2 };
+          return p.x;
+        }
+        """));
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f(a) {
+          if (a) {
+            var p = { x: 1 };
+          }
+          return p.x;
+        }
+        """));
+  }
+
+  @Test
+  public void usedBeforeDeclaration() {
+    assertEquals(Map.of(), scalarReplaceableObjects("""
+        function f() {
+          print(p.x);
+          var p = { x: 1 };
+        }
+        """));
+  }
+}
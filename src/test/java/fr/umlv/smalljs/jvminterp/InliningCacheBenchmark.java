@@ -0,0 +1,59 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// measure a field access site (o.x in get) that sees 1 layout (monomorphic), 4 layouts (polymorphic)
+// or 8 layouts (megamorphic, more than RT.POLYMORPHIC_DEPTH), the work done by each loop is the same,
+// not a test, run it with its main method
+public class InliningCacheBenchmark {
+  private static final String OBJECTS = """
+      var a = { x: 1 };
+      var b = { f0: 0, x: 1 };
+      var c = { f0: 0, f1: 0, x: 1 };
+      var d = { f0: 0, f1: 0, f2: 0, x: 1 };
+      var e = { f0: 0, f1: 0, f2: 0, f3: 0, x: 1 };
+      var f = { f0: 0, f1: 0, f2: 0, f3: 0, f4: 0, x: 1 };
+      var g = { f0: 0, f1: 0, f2: 0, f3: 0, f4: 0, f5: 0, x: 1 };
+      var h = { f0: 0, f1: 0, f2: 0, f3: 0, f4: 0, f5: 0, f6: 0, x: 1 };
+      """;
+  // get is not only a return, so it is not inlined and there is only one field access site
+  private static final String RUN = """
+      function get(o) {
+        var x = o.x;
+        return x;
+      }
+      function run(n, o0, o1, o2, o3, o4, o5, o6, o7) {
+        var s = 0;
+        for (var i = 0; i < n; i = i + 1) {
+          s = s + get(o0) + get(o1) + get(o2) + get(o3) + get(o4) + get(o5) + get(o6) + get(o7);
+        }
+        return s;
+      }
+      """;
+
+  private static Script script(String receivers) {
+    return createScript(OBJECTS + RUN + "print(run(2000000, " + receivers + "));");
+  }
+
+  private static void run(String name, Script script) {
+    var start = System.nanoTime();
+    JVMInterpreter.interpret(script, new PrintStream(OutputStream.nullOutputStream()));
+    var end = System.nanoTime();
+    System.out.printf("%-12s %6d ms%n", name, (end - start) / 1_000_000);
+  }
+
+  public static void main(String[] args) {
+    var monomorphic = script("a, a, a, a, a, a, a, a");
+    var polymorphic = script("a, b, c, d, a, b, c, d");
+    var megamorphic = script("a, b, c, d, e, f, g, h");
+    for (var round = 0; round < 5; round++) {
+      run("monomorphic", monomorphic);
+      run("polymorphic", polymorphic);
+      run("megamorphic", megamorphic);
+    }
+  }
+}
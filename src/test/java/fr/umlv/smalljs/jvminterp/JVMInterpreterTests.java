@@ -20,7 +20,6 @@ public class JVMInterpreterTests {
     return outStream.toString(UTF_8).replace("\r\n", "\n");
   }
 
-  /*
   @Nested
   public class Q2 {
     @Test
@@ -76,6 +75,35 @@ public class JVMInterpreterTests {
       assertEquals("6\n", execute("print(3 * 2)\n"));
       assertEquals("1\n", execute("print(3 / 2)\n"));
     }
+
+    @Test
+    public void printOperationsIntsThenStrings() {
+      assertEquals("true\nfalse\ntrue\n", execute("""
+              function lt(a, b) { return a < b; }
+              print(lt(1, 2));
+              print(lt(3, 2));
+              print(lt('a', 'b'));
+              """));
+    }
+
+    @Test
+    public void printOperationsOverflow() {
+      assertEquals("2147483646\n-2147483648\n3\n", execute("""
+              function add(a, b) { return a + b; }
+              print(add(2147483645, 1));
+              print(add(2147483647, 1));
+              print(add(1, 2));
+              """));
+    }
+
+    @Test
+    public void printOperationsDivisionByZero() {
+      assertThrows(ArithmeticException.class, () -> execute("""
+              function div(a, b) { return a / b; }
+              print(div(4, 2));
+              print(div(4, 0));
+              """));
+    }
   }
 
   @Nested
@@ -217,6 +245,62 @@ public class JVMInterpreterTests {
               print(undef());
               """));
     }
+
+    @Test
+    public void callDifferentFunctionsFromTheSameCallSite() {
+      // apply is not only a return, so it is not inlined and f(x) is always the same call site
+      assertEquals("2\n6\n6\n", execute("""
+              function apply(f, x) {
+                var r = f(x);
+                return r;
+              }
+              function inc(x) { return x + 1; }
+              function dbl(x) { return x * 2; }
+              print(apply(inc, 1));
+              print(apply(dbl, 3));
+              print(apply(inc, 5));
+              """));
+    }
+
+    @Test
+    public void callMoreFunctionsFromTheSameCallSiteThanTheCacheDepth() {
+      assertEquals("0\n1\n2\n3\n4\n5\n0\n1\n2\n3\n4\n5\n", execute("""
+              function apply(f) {
+                var r = f();
+                return r;
+              }
+              function f0() { return 0; }
+              function f1() { return 1; }
+              function f2() { return 2; }
+              function f3() { return 3; }
+              function f4() { return 4; }
+              function f5() { return 5; }
+              function all() {
+                print(apply(f0));
+                print(apply(f1));
+                print(apply(f2));
+                print(apply(f3));
+                print(apply(f4));
+                print(apply(f5));
+              }
+              all();
+              all();
+              """));
+    }
+
+    @Test
+    public void callAFunctionWithTheWrongNumberOfArgumentsFromALinkedCallSite() {
+      assertThrows(Failure.class, () -> execute("""
+              function apply(f, x) {
+                var r = f(x);
+                return r;
+              }
+              function inc(x) { return x + 1; }
+              function add(a, b) { return a + b; }
+              print(apply(inc, 1));
+              print(apply(add, 1));
+              """));
+    }
   }
 
   @Nested
@@ -301,6 +385,105 @@ public class JVMInterpreterTests {
               print(f(7));
               """));
     }
+
+    @Test
+    public void printWithAWhile() {
+      assertEquals("0\n1\n2\n", execute("""
+              var i = 0;
+              while (i < 3) {
+                print(i);
+                i = i + 1;
+              }
+              """));
+    }
+
+    @Test
+    public void printWithALoopThatUpdatesAGlobal() {
+      // get is not only a return, so it is not inlined and reads the global through a lookup
+      assertEquals("4950\n", execute("""
+              function get() {
+                var r = counter;
+                return r;
+              }
+              globalThis.counter = 0;
+              var s = 0;
+              for (var i = 0; i < 100; i = i + 1) {
+                globalThis.counter = i;
+                s = s + get();
+              }
+              print(s);
+              """));
+    }
+
+    @Test
+    public void printWithADoWhile() {
+      assertEquals("5\n", execute("""
+              var i = 5;
+              do {
+                print(i);
+                i = i + 1;
+              } while (i < 3);
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionWithAFor() {
+      assertEquals("45\n", execute("""
+              function sum(n) {
+                var s = 0;
+                for (var i = 0; i < n; i = i + 1) {
+                  s = s + i;
+                }
+                return s;
+              }
+              print(sum(10));
+              """));
+    }
+
+    @Test
+    public void printWithAForAndABreakAndAContinue() {
+      assertEquals("0\n1\n3\n", execute("""
+              for (var i = 0; i < 10; i = i + 1) {
+                if (i == 2) {
+                  continue;
+                }
+                if (i == 4) {
+                  break;
+                }
+                print(i);
+              }
+              """));
+    }
+
+    @Test
+    public void printWithNestedFors() {
+      assertEquals("0\n10\n11\n20\n21\n22\n", execute("""
+              for (var i = 0; i < 3; i = i + 1) {
+                for (var j = 0; j < 3; j = j + 1) {
+                  if (i < j) {
+                    break;
+                  }
+                  print(i * 10 + j);
+                }
+              }
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionThatReturnsFromALoop() {
+      assertEquals("7\n", execute("""
+              function root(n) {
+                var i = 0;
+                for (;;) {
+                  if (i * i == n) {
+                    return i;
+                  }
+                  i = i + 1;
+                }
+              }
+              print(root(49));
+              """));
+    }
   }
 
   @Nested
@@ -362,6 +545,83 @@ public class JVMInterpreterTests {
               print(f());
               """));
     }
+
+    @Test
+    public void callATailRecursiveFunction() {
+      assertEquals("100000\n", execute("""
+              function count(n, acc) {
+                if (n < 1) {
+                  return acc;
+                } else {
+                  return count(n - 1, acc + 1);
+                }
+              }
+              print(count(100000, 0));
+              """));
+    }
+
+    @Test
+    public void callATailRecursiveFunctionThatIsRedefined() {
+      assertEquals("20\n", execute("""
+              function f(n) {
+                if (n < 1) {
+                  return 'f';
+                } else {
+                  return f(n - 1);
+                }
+              }
+              var g = f;
+              function f(n) { return n * 10; }
+              print(g(3));
+              """));
+    }
+
+    @Test
+    public void callIntSpecializedFunctionWithNonInts() {
+      assertEquals("true\nfalse\ntrue\n", execute("""
+              function less(a, b) { return a < b; }
+              print(less(1, 2));
+              print(less(2, 1));
+              print(less('a', 'b'));
+              """));
+    }
+
+    @Test
+    public void callFunctionWithIntLocalVariables() {
+      assertEquals("6\n-2147483648\n", execute("""
+              function f(n) {
+                var a = n + 1;
+                var b = a * 2;
+                return b / 2 * 2;
+              }
+              print(f(2));
+              print(f(1073741823));
+              """));
+    }
+
+    @Test
+    public void callFunctionWithLocalVariableReadBeforeDeclaration() {
+      assertEquals("undefined\n3\n", execute("""
+              function f(n) {
+                print(a);
+                var a = n + 1;
+                return a;
+              }
+              print(f(2));
+              """));
+    }
+
+    @Test
+    public void callAndRewriteThroughGlobalThis() {
+      assertEquals("2\n2\n9\n", execute("""
+              function f() { return op(); }
+              function op() { return 2; }
+              print(f());
+              print(f());
+              globalThis.op = function() { return 9; };
+              print(f());
+              """));
+    }
   }
 
   @Nested
@@ -452,6 +712,38 @@ public class JVMInterpreterTests {
                   """));
     }
 
+    @Test
+    public void objectFieldsInAFunction() {
+      assertEquals(
+          "undefined\n5\n",
+          execute("""
+                  function f(a, b) {
+                    var point = { x: a, y: b };
+                    if (a < b) {
+                      point.x = b;
+                    }
+                    print(point.z);
+                    return point.x + point.y;
+                  }
+                  print(f(2, 3) - 1);
+                  """));
+    }
+
+    @Test
+    public void objectEscapingThroughAnAlias() {
+      assertEquals(
+          "3\n",
+          execute("""
+                  function f() {
+                    var point = { x: 1 };
+                    var alias = point;
+                    alias.x = 3;
+                    return point.x;
+                  }
+                  print(f());
+                  """));
+    }
+
     @Test
     public void canAccessGlobalThis() {
       assertEquals("undefined\n", execute("""
@@ -488,6 +780,78 @@ public class JVMInterpreterTests {
                   print(f(obj));
                   """));
     }
+
+    @Test
+    public void objectGetAFieldPolymorphic() {
+      assertEquals(
+          "1\n2\n3\n4\n1\n4\n",
+          execute("""
+                  function f(o) { return o.field; }
+                  var o1 = { field: 1 };
+                  var o2 = { a: 0, field: 2 };
+                  var o3 = { a: 0, b: 0, field: 3 };
+                  var o4 = { a: 0, b: 0, c: 0, field: 4 };
+                  print(f(o1));
+                  print(f(o2));
+                  print(f(o3));
+                  print(f(o4));
+                  print(f(o1));
+                  print(f(o4));
+                  """));
+    }
+
+    @Test
+    public void objectGetAFieldMegamorphic() {
+      assertEquals(
+          "1\n2\n3\n4\n5\n6\n1\nundefined\n",
+          execute("""
+                  function f(o) { return o.field; }
+                  var o1 = { field: 1 };
+                  var o2 = { a: 0, field: 2 };
+                  var o3 = { b: 0, field: 3 };
+                  var o4 = { c: 0, field: 4 };
+                  var o5 = { d: 0, field: 5 };
+                  var o6 = { e: 0, field: 6 };
+                  print(f(o1));
+                  print(f(o2));
+                  print(f(o3));
+                  print(f(o4));
+                  print(f(o5));
+                  print(f(o6));
+                  print(f(o1));
+                  print(f({}));
+                  """));
+    }
+
+    @Test
+    public void objectSetAFieldPolymorphic() {
+      assertEquals(
+          "10 20 30 40 50 60\n",
+          execute("""
+                  function set(o, v) { o.field = v; }
+                  var o1 = { field: 1 };
+                  var o2 = { a: 0, field: 2 };
+                  var o3 = { b: 0, field: 3 };
+                  var o4 = { c: 0, field: 4 };
+                  var o5 = { d: 0, field: 5 };
+                  var o6 = {};
+                  set(o1, 10);
+                  set(o2, 20);
+                  set(o3, 30);
+                  set(o4, 40);
+                  set(o5, 50);
+                  set(o6, 60);
+                  print(o1.field, o2.field, o3.field, o4.field, o5.field, o6.field);
+                  """));
+    }
+
+    @Test
+    public void objectGetAFieldOnANonObject() {
+      assertThrows(Failure.class, () -> execute("""
+                  var a = 3;
+                  print(a.field);
+                  """));
+    }
   }
 
   @Nested
@@ -544,6 +908,63 @@ public class JVMInterpreterTests {
                   print(fun(object2));
                   """));
     }
+
+    @Test
+    public void objectCallAMethodChanged() {
+      assertEquals(
+          "foo\nbar\n",
+          execute("""
+                  function call(o) { o.m(); }
+                  var object = {
+                    m: function() { print('foo'); }
+                  };
+                  call(object);
+                  object.m = function() { print('bar'); };
+                  call(object);
+                  """));
+    }
+
+    @Test
+    public void objectCallAMethodPolymorphic() {
+      assertEquals(
+          "1\n2\n3\n4\n5\n6\n1\n",
+          execute("""
+                  function call(o) { return o.m(); }
+                  var o1 = { m: function() { return 1; } };
+                  var o2 = { a: 0, m: function() { return 2; } };
+                  var o3 = { b: 0, m: function() { return 3; } };
+                  var o4 = { c: 0, m: function() { return 4; } };
+                  var o5 = { d: 0, m: function() { return 5; } };
+                  var o6 = { e: 0, m: function() { return 6; } };
+                  print(call(o1));
+                  print(call(o2));
+                  print(call(o3));
+                  print(call(o4));
+                  print(call(o5));
+                  print(call(o6));
+                  print(call(o1));
+                  """));
+    }
+
+    @Test
+    public void objectCallAFunctionSeveralTimes() {
+      assertEquals("5\n7\n", execute("""
+                  function foo(x, y) { return x + y; }
+                  function bar(x, y) { return x * y + 1; }
+                  function call(f, x, y) { return f.call(undefined, x, y); }
+                  print(call(foo, 2, 3));
+                  print(call(bar, 2, 3));
+                  """));
+    }
+
+    @Test
+    public void objectCallAMethodWithTheWrongNumberOfArguments() {
+      assertThrows(Failure.class, () -> execute("""
+                  var object = {
+                    m: function(x) { return x; }
+                  };
+                  object.m(1, 2);
+                  """));
+    }
   }
-  */
 }
\ No newline at end of file
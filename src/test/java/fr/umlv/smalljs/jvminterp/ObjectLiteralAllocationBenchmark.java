@@ -0,0 +1,56 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import com.sun.management.ThreadMXBean;
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+// measure the bytes allocated by a function that creates a temporary object,
+// when the object does not escape (scalar replaced) and when it escapes through an alias,
+// not a test, run it with its main method
+public class ObjectLiteralAllocationBenchmark {
+  private static final String SCALAR_REPLACED = """
+      function f(n) {
+        var p = { x: n, y: 1 };
+        if (p.x < 2) {
+          return p.y;
+        }
+        return f(p.x - 1) + f(p.x - 2);
+      }
+      print(f(25));
+      """;
+  private static final String ESCAPING = """
+      function f(n) {
+        var p = { x: n, y: 1 };
+        var alias = p;
+        if (alias.x < 2) {
+          return alias.y;
+        }
+        return f(alias.x - 1) + f(alias.x - 2);
+      }
+      print(f(25));
+      """;
+
+  private static void run(String name, Script script) {
+    var threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    var bytes = threadMXBean.getCurrentThreadAllocatedBytes();
+    var start = System.nanoTime();
+    JVMInterpreter.interpret(script, new PrintStream(OutputStream.nullOutputStream()));
+    var end = System.nanoTime();
+    var allocated = threadMXBean.getCurrentThreadAllocatedBytes() - bytes;
+    System.out.printf("%-16s %6d ms %10d KB %8.0f MB/s%n", name, (end - start) / 1_000_000, allocated / 1024,
+        allocated / 1024.0 / 1024.0 / ((end - start) / 1_000_000_000.0));
+  }
+
+  public static void main(String[] args) {
+    var scalarReplaced = createScript(SCALAR_REPLACED);
+    var escaping = createScript(ESCAPING);
+    for (var round = 0; round < 5; round++) {
+      run("scalar replaced", scalarReplaced);
+      run("escaping", escaping);
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static java.lang.invoke.MethodType.methodType;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umlv.smalljs.rt.Failure;
+import fr.umlv.smalljs.rt.JSObject;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class RTTest {
+  // an object with the field x at a different slot for each prefix of other fields
+  private static JSObject newObject(int prefix, Object x) {
+    var object = JSObject.newObject(null);
+    for (var i = 0; i < prefix; i++) {
+      object.register("f" + i, 0);
+    }
+    object.register("x", x);
+    return object;
+  }
+
+  private static CallSite getSite() {
+    return RT.bsm_get(MethodHandles.lookup(), "get", methodType(Object.class, Object.class), "x");
+  }
+
+  private static CallSite setSite() {
+    return RT.bsm_set(MethodHandles.lookup(), "set", methodType(void.class, Object.class, Object.class), "x");
+  }
+
+  private static Object get(CallSite callSite, Object receiver) throws Throwable {
+    return callSite.dynamicInvoker().invokeExact(receiver);
+  }
+
+  private static void set(CallSite callSite, Object receiver, Object value) throws Throwable {
+    callSite.dynamicInvoker().invokeExact(receiver, value);
+  }
+
+  @Test
+  public void getMonomorphic() throws Throwable {
+    var callSite = getSite();
+    assertEquals(0, RT.cacheDepth(callSite));
+    assertEquals(1, get(callSite, newObject(0, 1)));
+    assertEquals(2, get(callSite, newObject(0, 2)));
+    assertEquals(3, get(callSite, newObject(0, 3)));
+    assertEquals(1, RT.cacheDepth(callSite));
+  }
+
+  @Test
+  public void getPolymorphic() throws Throwable {
+    var callSite = getSite();
+    for (var round = 0; round < 2; round++) {
+      for (var prefix = 0; prefix < RT.POLYMORPHIC_DEPTH; prefix++) {
+        assertEquals(prefix, get(callSite, newObject(prefix, prefix)));
+      }
+    }
+    assertEquals(RT.POLYMORPHIC_DEPTH, RT.cacheDepth(callSite));
+  }
+
+  @Test
+  public void getMegamorphic() throws Throwable {
+    var callSite = getSite();
+    for (var prefix = 0; prefix <= RT.POLYMORPHIC_DEPTH; prefix++) {
+      assertEquals(prefix, get(callSite, newObject(prefix, prefix)));
+    }
+    assertEquals(RT.MEGAMORPHIC, RT.cacheDepth(callSite));
+    for (var prefix : List.of(0, 1, 2, 7)) {
+      assertEquals(prefix, get(callSite, newObject(prefix, prefix)));
+    }
+  }
+
+  @Test
+  public void getFromThePrototypeIsNotCached() throws Throwable {
+    var callSite = getSite();
+    var object = JSObject.newObject(newObject(0, 42));
+    assertEquals(42, get(callSite, object));
+    assertEquals(0, RT.cacheDepth(callSite));
+  }
+
+  @Test
+  public void setPolymorphicThenMegamorphic() throws Throwable {
+    var callSite = setSite();
+    var objects = List.of(newObject(0, 0), newObject(1, 0), newObject(2, 0), newObject(3, 0), newObject(4, 0));
+    for (var i = 0; i < RT.POLYMORPHIC_DEPTH; i++) {
+      set(callSite, objects.get(i), i + 10);
+      assertEquals(i + 10, objects.get(i).lookupOrDefault("x", null));
+    }
+    assertEquals(RT.POLYMORPHIC_DEPTH, RT.cacheDepth(callSite));
+    set(callSite, objects.getLast(), 14);
+    assertEquals(14, objects.getLast().lookupOrDefault("x", null));
+    assertEquals(RT.MEGAMORPHIC, RT.cacheDepth(callSite));
+  }
+
+  @Test
+  public void setANewFieldIsNotCached() throws Throwable {
+    var callSite = setSite();
+    var object = JSObject.newObject(null);
+    set(callSite, object, 3);
+    assertEquals(3, object.lookupOrDefault("x", null));
+    assertEquals(0, RT.cacheDepth(callSite));
+  }
+
+  private static CallSite funCallSite() {
+    return RT.bsm_funcall(MethodHandles.lookup(), "funcall",
+        methodType(Object.class, Object.class, Object.class, Object.class));
+  }
+
+  private static Object call(CallSite callSite, Object qualifier, Object arg) throws Throwable {
+    return callSite.dynamicInvoker().invokeExact(qualifier, (Object) JSObject.UNDEFINED, arg);
+  }
+
+  private static JSObject adder(int value) {
+    return JSObject.newFunction("add" + value, (_, args) -> (Integer) args[0] + value);
+  }
+
+  @Test
+  public void funCallRelinksWhenTheCalleeChanges() throws Throwable {
+    var callSite = funCallSite();
+    var add1 = adder(1);
+    var add2 = adder(2);
+    assertEquals(2, call(callSite, add1, 1));
+    assertEquals(1, RT.cacheDepth(callSite));
+    assertEquals(3, call(callSite, add2, 1));
+    assertEquals(2, RT.cacheDepth(callSite));
+    assertEquals(2, call(callSite, add1, 1));
+    assertEquals(2, RT.cacheDepth(callSite));
+  }
+
+  @Test
+  public void funCallMegamorphic() throws Throwable {
+    var callSite = funCallSite();
+    for (var value = 0; value <= RT.POLYMORPHIC_DEPTH; value++) {
+      assertEquals(value, call(callSite, adder(value), 0));
+    }
+    assertEquals(RT.MEGAMORPHIC, RT.cacheDepth(callSite));
+    assertEquals(10, call(callSite, adder(10), 0));
+  }
+
+  @Test
+  public void funCallWithTheWrongNumberOfArgumentsIsNotCached() throws Throwable {
+    var callSite = funCallSite();
+    var noArg = JSObject.newFunction("noArg",
+        MethodHandles.dropArguments(MethodHandles.constant(Object.class, 0), 0, Object.class));
+    assertThrows(Failure.class, () -> call(callSite, noArg, 1));
+    assertEquals(0, RT.cacheDepth(callSite));
+  }
+
+  private static CallSite methodCallSite() {
+    return RT.bsm_methodcall(MethodHandles.lookup(), "m", methodType(Object.class, Object.class, Object.class));
+  }
+
+  private static Object methodCall(CallSite callSite, Object receiver, Object arg) throws Throwable {
+    return callSite.dynamicInvoker().invokeExact(receiver, arg);
+  }
+
+  // an object with its own method m at a different slot for each prefix of other fields
+  private static JSObject newReceiver(int prefix) {
+    var object = JSObject.newObject(null);
+    for (var i = 0; i < prefix; i++) {
+      object.register("f" + i, 0);
+    }
+    object.register("m", JSObject.newFunction("m", (_, args) -> (Integer) args[0] + prefix));
+    return object;
+  }
+
+  @Test
+  public void methodCallPolymorphicThenMegamorphic() throws Throwable {
+    var callSite = methodCallSite();
+    for (var prefix = 0; prefix < RT.POLYMORPHIC_DEPTH; prefix++) {
+      assertEquals(prefix + 1, methodCall(callSite, newReceiver(prefix), 1));
+    }
+    assertEquals(RT.POLYMORPHIC_DEPTH, RT.cacheDepth(callSite));
+    assertEquals(RT.POLYMORPHIC_DEPTH + 1, methodCall(callSite, newReceiver(RT.POLYMORPHIC_DEPTH), 1));
+    assertEquals(RT.MEGAMORPHIC, RT.cacheDepth(callSite));
+    for (var prefix : List.of(0, 2, 7)) {
+      assertEquals(prefix + 1, methodCall(callSite, newReceiver(prefix), 1));
+    }
+  }
+
+  private static CallSite lookupSite(JSObject globalEnv) {
+    return RT.bsm_lookup(MethodHandles.lookup(), "lookup", methodType(Object.class), "a", globalEnv);
+  }
+
+  private static Object lookup(CallSite callSite) throws Throwable {
+    return callSite.dynamicInvoker().invokeExact();
+  }
+
+  @Test
+  public void lookupIsNotInvalidatedByAnotherVariable() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("a", 1);
+    var callSite = lookupSite(globalEnv);
+    assertEquals(1, lookup(callSite));
+    var target = callSite.getTarget();
+    globalEnv.register("b", 2);
+    globalEnv.register("b", 3);
+    assertEquals(1, lookup(callSite));
+    assertSame(target, callSite.getTarget());
+    globalEnv.register("a", 4);
+    assertEquals(4, lookup(callSite));
+  }
+
+  @Test
+  public void lookupOfAVariableThatChangesOften() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    var callSite = lookupSite(globalEnv);
+    for (var i = 0; i < 100; i++) {
+      globalEnv.register("a", i);
+      assertEquals(i, lookup(callSite));
+    }
+  }
+
+  private static Object add(CallSite callSite, Object a, Object b) throws Throwable {
+    return callSite.dynamicInvoker().invokeExact(a, b);
+  }
+
+  @Test
+  public void operatorIsNotInvalidatedByAnotherVariable() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("+", JSObject.newFunction("+", RT.operator("+")));
+    var callSite = RT.bsm_operator(MethodHandles.lookup(), "operator",
+        methodType(Object.class, Object.class, Object.class), "+", globalEnv);
+    assertEquals(3, add(callSite, 1, 2));
+    var target = callSite.getTarget();
+    globalEnv.register("a", 1);
+    assertEquals(5, add(callSite, 2, 3));
+    assertSame(target, callSite.getTarget());
+    globalEnv.register("+", JSObject.newFunction("+", (_, _) -> "plus"));
+    assertEquals("plus", add(callSite, 2, 3));
+  }
+
+  private static CallSite addSite() {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("+", JSObject.newFunction("+", RT.operator("+")));
+    return RT.bsm_operator(MethodHandles.lookup(), "operator",
+        methodType(Object.class, Object.class, Object.class), "+", globalEnv);
+  }
+
+  @Test
+  public void operatorOverflowStaysIntSpecialized() throws Throwable {
+    var callSite = addSite();
+    assertEquals(3, add(callSite, 1, 2));
+    assertEquals(Integer.MIN_VALUE, add(callSite, Integer.MAX_VALUE, 1));
+    assertTrue(RT.isIntSpecialized(callSite));
+  }
+
+  @Test
+  public void operatorDeoptimizesAfterSeveralNonInts() throws Throwable {
+    var callSite = addSite();
+    assertEquals(3, add(callSite, 1, 2));
+    assertThrows(ClassCastException.class, () -> add(callSite, "a", 2));
+    assertTrue(RT.isIntSpecialized(callSite));
+    assertEquals(5, add(callSite, 2, 3));
+    for (var i = 0; i < 10; i++) {
+      assertThrows(ClassCastException.class, () -> add(callSite, "a", 2));
+    }
+    assertFalse(RT.isIntSpecialized(callSite));
+    assertEquals(5, add(callSite, 2, 3));
+  }
+
+  @Test
+  public void intTypedOperatorWrapsOnOverflow() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("+", JSObject.newFunction("+", RT.operator("+")));
+    var callSite = RT.bsm_operator(MethodHandles.lookup(), "operator",
+        methodType(int.class, int.class, int.class), "+", globalEnv);
+    var invoker = callSite.dynamicInvoker();
+    assertEquals(3, (int) invoker.invokeExact(1, 2));
+    assertEquals(Integer.MIN_VALUE, (int) invoker.invokeExact(Integer.MAX_VALUE, 1));
+    assertTrue(RT.isIntSpecialized(callSite));
+  }
+
+  @Test
+  public void intOperatorRedefinedAfterLinking() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("+", JSObject.newFunction("+", RT.operator("+")));
+    var callSite = RT.bsm_operator(MethodHandles.lookup(), "operator",
+        methodType(int.class, int.class, int.class), "+", globalEnv);
+    var invoker = callSite.dynamicInvoker();
+    assertEquals(3, (int) invoker.invokeExact(1, 2));
+    globalEnv.register("+", JSObject.newFunction("+", (_, _) -> 42));
+    assertEquals(42, (int) invoker.invokeExact(1, 2));
+    globalEnv.register("+", JSObject.newFunction("+", (_, _) -> "plus"));
+    assertThrows(Failure.class, () -> { var _ = (int) invoker.invokeExact(1, 2); });
+  }
+
+  @Test
+  public void comparisonOperatorRedefinedAfterLinking() throws Throwable {
+    var globalEnv = JSObject.newEnv(null);
+    globalEnv.register("<", JSObject.newFunction("<", RT.operator("<")));
+    var callSite = RT.bsm_operator(MethodHandles.lookup(), "operator",
+        methodType(boolean.class, int.class, int.class), "<", globalEnv);
+    var invoker = callSite.dynamicInvoker();
+    assertTrue((boolean) invoker.invokeExact(1, 2));
+    globalEnv.register("<", JSObject.newFunction("<", (_, _) -> JSObject.UNDEFINED));
+    assertFalse((boolean) invoker.invokeExact(1, 2));
+    globalEnv.register("<", JSObject.newFunction("<", (_, _) -> "yes"));
+    assertTrue((boolean) invoker.invokeExact(3, 2));
+  }
+}
@@ -0,0 +1,349 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class TieredInterpreterTests {
+  private static String execute(String code, int threshold, List<String> compiled) {
+    var script = createScript(code);
+    var outStream = new ByteArrayOutputStream(8192);
+    // compile synchronously so the tests are deterministic
+    TieredInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8), threshold, Runnable::run,
+        fun -> compiled.add(fun.name()));
+    return outStream.toString(UTF_8).replace("\r\n", "\n");
+  }
+
+  @Test
+  public void hotFunctionIsCompiled() {
+    var compiled = new ArrayList<String>();
+    assertEquals("55\n", execute("""
+        function fibo(n) {
+          if (n < 2) {
+            return n;
+          }
+          return fibo(n - 1) + fibo(n - 2);
+        }
+        print(fibo(10));
+        """, 10, compiled));
+    assertEquals(List.of("fibo"), compiled);
+  }
+
+  @Test
+  public void coldFunctionIsNotCompiled() {
+    var compiled = new ArrayList<String>();
+    assertEquals("3\n", execute("""
+        function add(a, b) {
+          return a + b;
+        }
+        print(add(1, 2));
+        """, 10, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void compiledFunctionCallsInterpretedFunction() {
+    var compiled = new ArrayList<String>();
+    // the functions are not only a return, so they are not inlined
+    assertEquals("2\n3\n4\n", execute("""
+        function inc(a) {
+          var b = a + 1;
+          return b;
+        }
+        function f(a) {
+          var b = inc(a);
+          return b;
+        }
+        print(f(1));
+        print(f(2));
+        print(f(3));
+        """, 2, compiled));
+    assertEquals(List.of("f", "inc"), compiled);
+  }
+
+  @Test
+  public void hotFunctionWithALoopIsCompiled() {
+    var compiled = new ArrayList<String>();
+    assertEquals("3\n7\n12\n", execute("""
+        function sum(n) {
+          var s = 0;
+          for (var i = 1; i <= n; i = i + 1) {
+            if (i == 3) {
+              continue;
+            }
+            s = s + i;
+          }
+          return s;
+        }
+        print(sum(2));
+        print(sum(4));
+        print(sum(5));
+        """, 2, compiled));
+    // the loop is hot during the first call
+    assertEquals(List.of("sum$osr", "sum"), compiled);
+  }
+
+  @Test
+  public void hotLoopOfAFunctionCalledOnceIsCompiled() {
+    var compiled = new ArrayList<String>();
+    assertEquals("328351\n", execute("""
+        function sum(n) {
+          var s = 0;
+          for (var i = 0; i < n; i = i + 1) {
+            var square = i * i;
+            s = s + square;
+          }
+          var r = s + 1;
+          return r;
+        }
+        print(sum(100));
+        """, 10, compiled));
+    assertEquals(List.of("sum$osr"), compiled);
+  }
+
+  @Test
+  public void hotLoopReturnsFromTheCompiledCode() {
+    var compiled = new ArrayList<String>();
+    assertEquals("32\n", execute("""
+        function root(n) {
+          var i = 0;
+          do {
+            if (n < i * i) {
+              return i;
+            }
+            i = i + 1;
+          } while (i <= n);
+          return 0;
+        }
+        print(root(1000));
+        """, 10, compiled));
+    assertEquals(List.of("root$osr"), compiled);
+  }
+
+  @Test
+  public void hotLoopAssigningAGlobalStaysInterpreted() {
+    var compiled = new ArrayList<String>();
+    assertEquals("100\n", execute("""
+        var count = 0;
+        function inc(n) {
+          for (var i = 0; i < n; i = i + 1) {
+            count = count + 1;
+          }
+        }
+        inc(100);
+        print(count);
+        """, 10, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  private static final String TAIL_RECURSIVE_LOOP = """
+      function loop(n, acc) {
+        if (n == 0) {
+          return acc;
+        }
+        return loop(n - 1, acc + 1);
+      }
+      print(loop(200000, 0));
+      """;
+
+  @Test
+  public void tailRecursionOfAFunctionCompiledDuringTheCall() {
+    var compiled = new ArrayList<String>();
+    assertEquals("200000\n", execute(TAIL_RECURSIVE_LOOP, TieredInterpreter.HOT_THRESHOLD, compiled));
+    assertEquals(List.of("loop"), compiled);
+  }
+
+  @Test
+  public void tailRecursionOfAnInterpretedFunction() {
+    var compiled = new ArrayList<String>();
+    assertEquals("200000\n", execute(TAIL_RECURSIVE_LOOP, 1_000_000, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void compiledFunctionReadsAGlobalUpdatedByALoop() {
+    var compiled = new ArrayList<String>();
+    assertEquals("4950\n", execute("""
+        function get() {
+          var r = counter;
+          return r;
+        }
+        var counter = 0;
+        var s = 0;
+        for (var i = 0; i < 100; i = i + 1) {
+          counter = i;
+          s = s + get();
+        }
+        print(s);
+        """, 2, compiled));
+    // the top level loop is compiled too, it writes the globals through globalThis
+    assertEquals(List.of("get", "script$osr"), compiled);
+  }
+
+  @Test
+  public void hotLoopOfTheTopLevelCodeIsCompiled() {
+    var compiled = new ArrayList<String>();
+    assertEquals("328350\n100\n", execute("""
+        var s = 0;
+        var i = 0;
+        while (i < 100) {
+          var square = i * i;
+          s = s + square;
+          i = i + 1;
+        }
+        print(s);
+        print(i);
+        """, 10, compiled));
+    assertEquals(List.of("script$osr"), compiled);
+  }
+
+  @Test
+  public void hotLoopOfTheTopLevelCodeBreaksFromTheCompiledCode() {
+    var compiled = new ArrayList<String>();
+    assertEquals("32\n", execute("""
+        var r = 0;
+        for (var i = 0; i < 1000; i = i + 1) {
+          if (1000 < i * i) {
+            r = i;
+            break;
+          }
+        }
+        print(r);
+        """, 10, compiled));
+    assertEquals(List.of("script$osr"), compiled);
+  }
+
+  @Test
+  public void hotLoopOfTheTopLevelCodeStaysInterpretedIfGlobalThisIsAssigned() {
+    var compiled = new ArrayList<String>();
+    assertEquals("100\n", execute("""
+        var count = 0;
+        for (var i = 0; i < 100; i = i + 1) {
+          count = count + 1;
+        }
+        print(count);
+        globalThis = 0;
+        """, 10, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void functionTooLargeToBeCompiledStaysInterpreted() {
+    var compiled = new ArrayList<String>();
+    // the bytecode of the function is larger than the maximum size of a method
+    var code = "function f(n) {\n" + "  n = n + 1;\n".repeat(10_000) + "  return n;\n}\n"
+        + "print(f(0));\nprint(f(1));\nprint(f(2));\n";
+    assertEquals("10000\n10001\n10002\n", execute(code, 2, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void functionAssigningAGlobalStaysInterpreted() {
+    var compiled = new ArrayList<String>();
+    assertEquals("3\n", execute("""
+        var count = 0;
+        function inc() {
+          count = count + 1;
+        }
+        inc();
+        inc();
+        inc();
+        print(count);
+        """, 2, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void conditionOnZeroOrUndefinedStaysInterpreted() {
+    var compiled = new ArrayList<String>();
+    // 0 is false and undefined is true for the AST interpreter, it is the reverse for the compiled code
+    assertEquals("2\n1\n2\n1\n", execute("""
+        function f(x) {
+          if (x) {
+            return 1;
+          }
+          return 2;
+        }
+        function nothing() {
+          return;
+        }
+        var u = nothing();
+        print(f(0));
+        print(f(u));
+        for (var i = 0; i < %d; i = i + 1) {
+          f(0);
+          f(u);
+        }
+        print(f(0));
+        print(f(u));
+        """.formatted(2 * TieredInterpreter.HOT_THRESHOLD), TieredInterpreter.HOT_THRESHOLD, compiled));
+    // only the top level loop is compiled, f stays interpreted
+    assertEquals(List.of("script$osr"), compiled);
+  }
+
+  @Test
+  public void comparisonHasTheSameValueBeforeAndAfterCompilation() {
+    var compiled = new ArrayList<String>();
+    assertEquals("true\nfalse\ntrue\nfalse\n", execute("""
+        function lt(a, b) {
+          var r = a < b;
+          return r;
+        }
+        print(lt(1, 2));
+        print(lt(2, 1));
+        for (var i = 0; i < %d; i = i + 1) {
+          lt(i, 2);
+        }
+        print(lt(1, 2));
+        print(lt(2, 1));
+        """.formatted(2 * TieredInterpreter.HOT_THRESHOLD), TieredInterpreter.HOT_THRESHOLD, compiled));
+    assertEquals(List.of("lt", "script$osr"), compiled);
+  }
+
+  @Test
+  public void closureStaysInterpreted() {
+    var compiled = new ArrayList<String>();
+    assertEquals("3\n3\n3\n", execute("""
+        function adder(a) {
+          return function(b) { return a + b; };
+        }
+        print(adder(1)(2));
+        print(adder(2)(1));
+        print(adder(0)(3));
+        """, 2, compiled));
+    assertEquals(List.of(), compiled);
+  }
+
+  @Test
+  public void compilationInABackgroundThread() throws InterruptedException {
+    var script = createScript("""
+        function fibo(n) {
+          if (n < 2) {
+            return n;
+          }
+          return fibo(n - 1) + fibo(n - 2);
+        }
+        print(fibo(15));
+        """);
+    var outStream = new ByteArrayOutputStream(8192);
+    var compiled = new ArrayBlockingQueue<String>(1);
+    var compiler = Executors.newSingleThreadExecutor();
+    try {
+      TieredInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8), 10, compiler,
+          fun -> compiled.add(fun.name()));
+      assertEquals("fibo", compiled.poll(10, TimeUnit.SECONDS));
+    } finally {
+      compiler.shutdown();
+    }
+    assertEquals("610\n", outStream.toString(UTF_8).replace("\r\n", "\n"));
+  }
+}
@@ -0,0 +1,119 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class TypeInferenceTest {
+  private static Fun function(String code) {
+    return (Fun) createScript(code).body().exprs().getFirst();
+  }
+
+  @Test
+  public void intParameters() {
+    var fun = function("""
+        function f(n, o) {
+          print(o);
+          return n + 1;
+        }
+        """);
+    assertEquals(Set.of("n"), TypeInference.intParameters(fun.parameters(), fun.body()));
+  }
+
+  @Test
+  public void intParametersAssignedANonInt() {
+    var fun = function("""
+        function f(n) {
+          n = 'hello';
+          return n + 1;
+        }
+        """);
+    assertEquals(Set.of(), TypeInference.intParameters(fun.parameters(), fun.body()));
+  }
+
+  @Test
+  public void intVariables() {
+    var fun = function("""
+        function f(n) {
+          var a = n * 2;
+          var b = a + 1;
+          var c = print(b);
+          return c;
+        }
+        """);
+    assertEquals(Set.of("n", "a", "b"), TypeInference.intVariables(Set.of("n"), fun.body()));
+    assertEquals(Set.of(), TypeInference.intVariables(Set.of(), fun.body()));
+  }
+
+  @Test
+  public void intVariablesReadBeforeDeclaration() {
+    var fun = function("""
+        function f() {
+          print(a);
+          var a = 1;
+          var b = 2;
+          if (b < 3) {
+            var c = 3;
+          }
+          return c;
+        }
+        """);
+    assertEquals(Set.of("b"), TypeInference.intVariables(Set.of(), fun.body()));
+  }
+
+  @Test
+  public void definesAnOperator() {
+    // a script can not name a variable like an operator, so the tree is created by hand
+    var redefinition = new VarAssignment("+", new Fun("plus", List.of("a", "b"), false,
+        new Block(List.of(new Return(new Literal("plus", 1), 1)), 1), 1), false, 1);
+    var fun = function("""
+        function f(n) {
+          var a = n + 1;
+          return a;
+        }
+        """);
+    var body = new Block(List.of(redefinition, fun.body().exprs().getFirst(), fun.body().exprs().getLast()), 1);
+    assertAll(
+        () -> assertFalse(TypeInference.definesAnOperator(fun)),
+        () -> assertTrue(TypeInference.definesAnOperator(body))
+    );
+  }
+
+  @Test
+  public void noSpecializationIfAnOperatorIsDefined() {
+    var fun = function("""
+        function f(n) {
+          var a = n + 1;
+          return a;
+        }
+        """);
+    var redefinition = new VarAssignment("-", new Literal(0, 1), true, 1);
+    var redefiningBody = new Block(List.of(redefinition, fun.body().exprs().getFirst(), fun.body().exprs().getLast()), 1);
+    var globalEnv = JVMInterpreter.createGlobalEnv(new PrintStream(OutputStream.nullOutputStream()));
+    var specialized = ByteCodeRewriter.createFunction("f", fun.parameters(), fun.body(), globalEnv);
+    var notSpecialized = ByteCodeRewriter.createFunction("f", fun.parameters(), redefiningBody, globalEnv);
+    assertAll(
+        () -> assertNotNull(specialized.specializedMethodHandle()),
+        () -> assertEquals(0, specialized.length()),  // not visible as a property
+        () -> assertNull(notSpecialized.specializedMethodHandle()),
+        () -> assertEquals(4, specialized.invoke(UNDEFINED, 3)),
+        () -> assertEquals(4, notSpecialized.invoke(UNDEFINED, 3))
+    );
+  }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.util.List;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
@@ -49,6 +50,7 @@ public class JSObjectTest {
           () -> assertNotNull(func),
           () -> assertEquals("function test", func.name()),
           () -> assertNotNull(func.methodHandle()),
+          () -> assertSame(invoker, func.invoker()),
           () -> assertNotNull(call),
           () -> assertEquals("23", ((JSObject) call).invoke(func, null, 2, 3))
       );
@@ -65,7 +67,8 @@ public class JSObjectTest {
       assertAll(
           () -> assertNotNull(func),
           () -> assertEquals("function valueOf", func.name()),
-          () -> assertNotNull(func.methodHandle())
+          () -> assertNotNull(func.methodHandle()),
+          () -> assertNull(func.invoker())
       );
     }
   }
@@ -115,6 +118,17 @@ public class JSObjectTest {
       );
     }
 
+    @Test
+    public void testProto() {
+      var proto = JSObject.newObject(null);
+      var obj = JSObject.newObject(proto);
+
+      assertAll(
+          () -> assertSame(proto, obj.proto()),
+          () -> assertNull(proto.proto())
+      );
+    }
+
     @Test
     public void testFastAccess() {
       var obj = JSObject.newObject(null);
@@ -150,6 +164,44 @@ public class JSObjectTest {
       );
     }
 
+    @Test
+    public void testLayoutOf() {
+      var obj = JSObject.newObject(null);
+      obj.register("a", 1);
+      obj.register("b", 2);
+
+      assertAll(
+          () -> assertSame(obj.layout(), JSObject.layoutOf(List.of("a", "b"))),
+          () -> assertNotSame(obj.layout(), JSObject.layoutOf(List.of("b", "a"))),
+          () -> assertThrows(IllegalArgumentException.class, () -> JSObject.layoutOf(List.of("a", "a")))
+      );
+    }
+
+    @Test
+    public void testNewObjectWithLayout() {
+      var proto = JSObject.newObject(null);
+      var layout = JSObject.layoutOf(List.of("a", "b"));
+      var obj = JSObject.newObject(proto, layout, new Object[] { 1, "text" });
+
+      assertAll(
+          () -> assertSame(layout, obj.layout()),
+          () -> assertSame(proto, obj.proto()),
+          () -> assertEquals(1, obj.lookupOrDefault("a", null)),
+          () -> assertEquals("text", obj.lookupOrDefault("b", null)),
+          () -> assertEquals(2, obj.length())
+      );
+    }
+
+    @Test
+    public void testNewObjectWithLayoutWrongNumberOfValues() {
+      var layout = JSObject.layoutOf(List.of("a", "b"));
+      assertAll(
+          () -> assertThrows(IllegalArgumentException.class, () -> JSObject.newObject(null, layout, new Object[] { 1 })),
+          () -> assertThrows(IllegalArgumentException.class, () -> JSObject.newObject(null, "layout", new Object[0])),
+          () -> assertThrows(NullPointerException.class, () -> JSObject.newObject(null, layout, new Object[] { 1, null }))
+      );
+    }
+
     @Test
     public void testSwitchPointInvalidation() {
       var obj = JSObject.newObject(null);
@@ -165,6 +217,27 @@ public class JSObjectTest {
           () -> assertNotSame(secondSwitchPoint, obj.switchPoint())
       );
     }
+
+    @Test
+    public void testKeySwitchPointInvalidation() {
+      var obj = JSObject.newObject(null);
+      obj.register("a", 1);
+      obj.register("b", 2);
+      var switchPointA = obj.switchPoint("a");
+      var switchPointB = obj.switchPoint("b");
+      var switchPointC = obj.switchPoint("c");
+
+      obj.register("a", 3);  // Update existing property
+      obj.fastWrite(obj.layoutSlot("b"), 4);
+
+      assertAll(
+          () -> assertTrue(switchPointA.hasBeenInvalidated()),
+          () -> assertTrue(switchPointB.hasBeenInvalidated()),
+          () -> assertFalse(switchPointC.hasBeenInvalidated()),
+          () -> assertNotSame(switchPointA, obj.switchPoint("a")),
+          () -> assertSame(switchPointC, obj.switchPoint("c"))
+      );
+    }
   }
 
   @Nested
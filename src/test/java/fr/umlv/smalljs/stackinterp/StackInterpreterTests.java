@@ -312,6 +312,87 @@ public class StackInterpreterTests {
               print(f(7));
               """));
     }
+
+    @Test
+    public void printWithAWhile() {
+      assertEquals("0\n1\n2\n", execute("""
+              var i = 0;
+              while (i < 3) {
+                print(i);
+                i = i + 1;
+              }
+              """));
+    }
+
+    @Test
+    public void printWithADoWhile() {
+      assertEquals("5\n", execute("""
+              var i = 5;
+              do {
+                print(i);
+                i = i + 1;
+              } while (i < 3);
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionWithAFor() {
+      assertEquals("45\n", execute("""
+              function sum(n) {
+                var s = 0;
+                for (var i = 0; i < n; i = i + 1) {
+                  s = s + i;
+                }
+                return s;
+              }
+              print(sum(10));
+              """));
+    }
+
+    @Test
+    public void printWithAForAndABreakAndAContinue() {
+      assertEquals("0\n1\n3\n", execute("""
+              for (var i = 0; i < 10; i = i + 1) {
+                if (i == 2) {
+                  continue;
+                }
+                if (i == 4) {
+                  break;
+                }
+                print(i);
+              }
+              """));
+    }
+
+    @Test
+    public void printWithNestedFors() {
+      assertEquals("0\n10\n11\n20\n21\n22\n", execute("""
+              for (var i = 0; i < 3; i = i + 1) {
+                for (var j = 0; j < 3; j = j + 1) {
+                  if (i < j) {
+                    break;
+                  }
+                  print(i * 10 + j);
+                }
+              }
+              """));
+    }
+
+    @Test
+    public void callAUserDefinedFunctionThatReturnsFromALoop() {
+      assertEquals("7\n", execute("""
+              function root(n) {
+                var i = 0;
+                for (;;) {
+                  if (i * i == n) {
+                    return i;
+                  }
+                  i = i + 1;
+                }
+              }
+              print(root(49));
+              """));
+    }
   }
 
   @Nested
@@ -373,6 +454,57 @@ public class StackInterpreterTests {
               print(f());
               """));
     }
+
+    @Test
+    public void callATailRecursiveFunction() {
+      assertEquals("100000\n", execute("""
+              function count(n, acc) {
+                if (n < 1) {
+                  return acc;
+                } else {
+                  return count(n - 1, acc + 1);
+                }
+              }
+              print(count(100000, 0));
+              """));
+    }
+
+    @Test
+    public void callMutuallyTailRecursiveFunctions() {
+      assertEquals("odd\n", execute("""
+              function even(n) {
+                if (n < 1) {
+                  return 'even';
+                } else {
+                  return odd(n - 1);
+                }
+              }
+              function odd(n) {
+                if (n < 1) {
+                  return 'odd';
+                } else {
+                  return even(n - 1);
+                }
+              }
+              print(even(100001));
+              """));
+    }
+
+    @Test
+    public void callATailRecursiveFunctionThatIsRedefined() {
+      assertEquals("20\n", execute("""
+              function f(n) {
+                if (n < 1) {
+                  return 'f';
+                } else {
+                  return f(n - 1);
+                }
+              }
+              var g = f;
+              function f(n) { return n * 10; }
+              print(g(3));
+              """));
+    }
   }
 
   @Nested